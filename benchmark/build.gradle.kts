@@ -0,0 +1,30 @@
+// 坤曰核心算法的JMH基准测试，纯JVM模块，无需设备即可运行：
+// ./gradlew :benchmark:jmh
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(17))
+    }
+}
+
+dependencies {
+    implementation(project(":core"))
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    benchmarkMode.set(listOf("thrpt", "sample"))
+    timeUnit.set("us")
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("reports/jmh/results.json"))
+    // 可通过 -PjmhInclude=Decrypt 只运行部分基准
+    providers.gradleProperty("jmhInclude").orNull?.let { includes.add(it) }
+}
@@ -0,0 +1,57 @@
+package com.example.kun_said.benchmark;
+
+import com.example.kun_said.util.EncryptionUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按输入大小（10B到10MB）测试加密、自包含解码和凭证提取
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+    private static final String KEY = "坤坤凭证";
+
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    private String content;
+    private String selfContainedMessage;
+    private String documentWithMessage;
+
+    @Setup
+    public void setUp() {
+        EncryptionUtil.configureStore(16, Long.MAX_VALUE, 0);
+        content = TextFixtures.text(size);
+        selfContainedMessage = EncryptionUtil.encrypt(content, KEY, EncryptionUtil.VERSION_SELF_CONTAINED);
+        // 凭证提取需要先扫过前面的普通文本
+        documentWithMessage = content + EncryptionUtil.encrypt("只因你太美", KEY);
+    }
+
+    @Benchmark
+    public String encryptMapped() {
+        return EncryptionUtil.encrypt(content, KEY);
+    }
+
+    @Benchmark
+    public String encryptSelfContained() {
+        return EncryptionUtil.encrypt(content, KEY, EncryptionUtil.VERSION_SELF_CONTAINED);
+    }
+
+    @Benchmark
+    public String decryptSelfContained() {
+        return EncryptionUtil.decrypt(selfContainedMessage, KEY);
+    }
+
+    @Benchmark
+    public String extractKey() {
+        return EncryptionUtil.extractKey(documentWithMessage);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.kun_said.benchmark;
+
+import com.example.kun_said.util.EncryptionUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按映射规模（空到100万条）测试第一版解密的命中与未命中查询
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LookupBenchmark {
+    private static final String KEY = "坤坤凭证";
+    private static final int BATCH = 10000;
+
+    @Param({"0", "1000", "100000", "1000000"})
+    public int mapSize;
+
+    @Param({"true", "false"})
+    public boolean hit;
+
+    private String message;
+
+    @Setup
+    public void setUp() {
+        // 未命中的密文在填充映射之前生成，重新配置存储后即不存在
+        String missMessage = EncryptionUtil.encrypt("未加密过的内容", KEY);
+        EncryptionUtil.configureStore(mapSize + 1, Long.MAX_VALUE, 0);
+
+        for (int start = 0; start < mapSize; start += BATCH) {
+            int end = Math.min(mapSize, start + BATCH);
+            List<String> contents = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                contents.add("消息" + i);
+            }
+            EncryptionUtil.encryptAll(contents, Collections.nCopies(contents.size(), KEY),
+                    EncryptionUtil.VERSION_MAPPED);
+        }
+
+        message = hit ? EncryptionUtil.encrypt("命中的内容", KEY) : missMessage;
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return EncryptionUtil.decrypt(message, KEY);
+    }
+
+    @Benchmark
+    public String extractKey() {
+        return EncryptionUtil.extractKey(message);
+    }
+}
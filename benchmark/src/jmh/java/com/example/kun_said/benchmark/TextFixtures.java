@@ -0,0 +1,29 @@
+package com.example.kun_said.benchmark;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 生成指定UTF-8字节数的中英混合文本
+ */
+final class TextFixtures {
+    private static final String SAMPLE = "只因你太美baby，鸡你太美 ";
+
+    private TextFixtures() {
+    }
+
+    static String text(int bytes) {
+        StringBuilder builder = new StringBuilder(bytes);
+        int length = 0;
+        int i = 0;
+        while (true) {
+            char c = SAMPLE.charAt(i++ % SAMPLE.length());
+            int charBytes = String.valueOf(c).getBytes(StandardCharsets.UTF_8).length;
+            if (length + charBytes > bytes) {
+                break;
+            }
+            builder.append(c);
+            length += charBytes;
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,23 @@
+// 坤曰命令行批处理工具，逐行读取标准输入或文件，多线程加密解密后按输入顺序输出：
+// ./gradlew :cli:installDist
+// cli/build/install/kun/bin/kun encrypt -k 凭证 input.txt > output.txt
+plugins {
+    application
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(17))
+    }
+}
+
+dependencies {
+    implementation(project(":core"))
+    testImplementation("junit:junit:4.13.2")
+}
+
+application {
+    applicationName = "kun"
+    mainClass.set("com.example.kun_said.cli.KunCli")
+    applicationDefaultJvmArgs = listOf("-Dfile.encoding=UTF-8")
+}
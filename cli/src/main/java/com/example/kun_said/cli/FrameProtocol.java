@@ -0,0 +1,65 @@
+package com.example.kun_said.cli;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 服务模式的长度前缀协议
+ * 每帧以4字节大端长度开头，后面是帧内容。长度上限16MB，所以帧的第一个字节总是0，
+ * 服务端据此与以字母开头的HTTP请求区分。
+ *
+ * 请求内容：1字节操作、1字节编码版本、2字节凭证长度、凭证（UTF-8）、原文或密文（UTF-8）。
+ * 解密时凭证长度为0表示从密文中提取凭证。
+ * 响应内容：1字节状态、结果文本（UTF-8）。
+ */
+final class FrameProtocol {
+    static final int HEADER_BYTES = 4;
+    static final int MAX_FRAME_BYTES = (1 << 24) - 1;
+
+    static final byte OP_ENCRYPT = 1;
+    static final byte OP_DECRYPT = 2;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+
+    private FrameProtocol() {
+    }
+
+    /**
+     * 编码一个请求帧
+     * @param key 加密凭证，解密时可以为null
+     * @return 可直接写出的帧，position为0
+     */
+    static ByteBuffer request(byte op, int version, String key, String content) {
+        byte[] keyBytes = key != null ? key.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("凭证过长");
+        }
+        int length = 4 + keyBytes.length + contentBytes.length;
+        if (length > MAX_FRAME_BYTES) {
+            throw new IllegalArgumentException("请求过大");
+        }
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + length);
+        frame.putInt(length)
+                .put(op)
+                .put((byte) version)
+                .putShort((short) keyBytes.length)
+                .put(keyBytes)
+                .put(contentBytes);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * 编码一个响应帧
+     * @return 可直接写出的帧，position为0
+     */
+    static ByteBuffer response(byte status, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + 1 + bytes.length);
+        frame.putInt(1 + bytes.length).put(status).put(bytes);
+        frame.flip();
+        return frame;
+    }
+}
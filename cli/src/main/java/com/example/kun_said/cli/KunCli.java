@@ -0,0 +1,305 @@
+package com.example.kun_said.cli;
+
+import com.example.kun_said.util.EncryptionUtil;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 命令行批量加密解密
+ * 从标准输入或文件逐行读取，多线程处理，按输入顺序逐行输出，结束时在标准错误输出吞吐量。
+ * 也可以作为本机服务运行（serve），并提供对应的压测客户端（bench）。
+ */
+public final class KunCli {
+    private static final String USAGE =
+            "用法：\n"
+            + "  kun encrypt -k 凭证 [-v 1|2] [-t 线程数] [-s 映射目录] [-o 输出文件] [文件...]\n"
+            + "  kun decrypt [-k 凭证] [-t 线程数] [-s 映射目录] [-o 输出文件] [文件...]\n"
+            + "  kun serve [-p 端口] [-t 线程数] [-s 映射目录]\n"
+            + "  kun bench [-p 端口] [-m encrypt|decrypt] [-v 1|2] [-c 连接数] [-d 未完成请求数] [-n 秒数] [-l 原文长度]\n"
+            + "不指定文件时读取标准输入，每行一条。\n"
+            + "解密时不指定凭证则从每行密文中提取。\n"
+            + "-s 指定映射日志目录，用于跨进程解密版本1的密文。\n"
+            + "serve只监听本机回环地址，收到中断信号后处理完已读取的请求再退出。";
+    static final String BAD_FORMAT = "无法解密：格式不正确";
+    private static final int DEFAULT_PORT = 7460;
+    // 平滑关闭时等待已读取请求写出的最长时间
+    private static final long SHUTDOWN_GRACE_SECONDS = 5;
+    // 每个工作线程允许同时在处理中的行数
+    private static final int WINDOW_PER_THREAD = 256;
+
+    private KunCli() {
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.exit(run(args));
+        } catch (UsageException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("读写失败：" + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+    }
+
+    private static int run(String[] args) throws IOException, InterruptedException {
+        Options options = Options.parse(args);
+        switch (options.command) {
+            case "serve":
+                return serve(options);
+            case "bench":
+                new LoadGenerator(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.port),
+                        options.connections, options.depth, TimeUnit.SECONDS.toNanos(options.seconds),
+                        options.length, options.benchDecrypt, options.version).run();
+                return 0;
+            default:
+                return batch(options);
+        }
+    }
+
+    private static int serve(Options options) throws IOException, InterruptedException {
+        if (options.storeDir != null) {
+            EncryptionUtil.init(options.storeDir);
+        }
+        EncryptionUtil.warmUp();
+        KunServer server = new KunServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), options.port), options.threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.shutdown(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS);
+            try {
+                server.awaitStopped(SHUTDOWN_GRACE_SECONDS + 1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // 关闭钩子返回后进程立即结束，映射日志要在这里关闭
+            EncryptionUtil.close();
+        }, "kun-shutdown"));
+        server.start();
+        System.err.println("正在监听 127.0.0.1:" + server.port());
+        server.awaitStopped(Long.MAX_VALUE, TimeUnit.DAYS);
+        return 0;
+    }
+
+    private static int batch(Options options) throws IOException, InterruptedException {
+        if (options.storeDir != null) {
+            EncryptionUtil.init(options.storeDir);
+        }
+        try {
+            OrderedPipeline pipeline = new OrderedPipeline(
+                    options.threads, options.threads * WINDOW_PER_THREAD, lineFunction(options));
+            OutputStream stream = options.output != null
+                    ? new FileOutputStream(options.output) : System.out;
+            long lines = 0;
+            long chars = 0;
+            long start = System.nanoTime();
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+                if (options.inputs.isEmpty()) {
+                    CountingReader in = reader(System.in);
+                    lines += pipeline.run(in, out);
+                    chars += in.chars;
+                } else {
+                    for (File input : options.inputs) {
+                        try (CountingReader in = reader(new FileInputStream(input))) {
+                            lines += pipeline.run(in, out);
+                            chars += in.chars;
+                        }
+                    }
+                }
+            }
+            printThroughput(lines, chars, System.nanoTime() - start);
+            return 0;
+        } finally {
+            if (options.storeDir != null) {
+                EncryptionUtil.close();
+            }
+        }
+    }
+
+    private static OrderedPipeline.LineFunction lineFunction(Options options) {
+        if ("encrypt".equals(options.command)) {
+            return line -> EncryptionUtil.encrypt(line, options.key, options.version);
+        }
+        if (options.key != null) {
+            return line -> EncryptionUtil.decrypt(line, options.key);
+        }
+        return line -> {
+            String key = EncryptionUtil.extractKey(line);
+            return key != null ? EncryptionUtil.decrypt(line, key) : BAD_FORMAT;
+        };
+    }
+
+    private static CountingReader reader(InputStream in) {
+        return new CountingReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    private static void printThroughput(long lines, long chars, long nanos) {
+        double seconds = Math.max(nanos, 1) / 1e9;
+        System.err.println(String.format(Locale.ROOT,
+                "%d行，%d字符，耗时%.1fms，%.0f行/秒，%.2fMB/秒",
+                lines, chars, nanos / 1e6, lines / seconds, chars * 2 / seconds / (1 << 20)));
+    }
+
+    /**
+     * 统计读取字符数的BufferedReader，只在读取线程上使用
+     */
+    private static final class CountingReader extends BufferedReader {
+        // 不含换行符
+        long chars;
+
+        CountingReader(InputStreamReader in) {
+            super(in, 1 << 16);
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            String line = super.readLine();
+            if (line != null) {
+                chars += line.length();
+            }
+            return line;
+        }
+    }
+
+    private static final class UsageException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Options {
+        String command;
+        String key;
+        int version = EncryptionUtil.VERSION_MAPPED;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File storeDir;
+        File output;
+        final List<File> inputs = new ArrayList<>();
+        int port = DEFAULT_PORT;
+        boolean benchDecrypt;
+        int connections = 8;
+        int depth = 16;
+        int seconds = 10;
+        int length = 64;
+
+        static Options parse(String[] args) {
+            if (args.length == 0) {
+                throw new UsageException("缺少命令");
+            }
+            Options options = new Options();
+            options.command = args[0];
+            switch (options.command) {
+                case "encrypt":
+                case "decrypt":
+                case "serve":
+                case "bench":
+                    break;
+                default:
+                    throw new UsageException("未知命令：" + args[0]);
+            }
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-k":
+                        options.key = value(args, ++i, arg);
+                        break;
+                    case "-v":
+                        options.version = number(value(args, ++i, arg), arg);
+                        if (options.version != EncryptionUtil.VERSION_MAPPED
+                                && options.version != EncryptionUtil.VERSION_SELF_CONTAINED) {
+                            throw new UsageException("不支持的版本：" + options.version);
+                        }
+                        break;
+                    case "-t":
+                        options.threads = positive(value(args, ++i, arg), arg);
+                        break;
+                    case "-p":
+                        options.port = number(value(args, ++i, arg), arg);
+                        if (options.port < 0 || options.port > 0xFFFF) {
+                            throw new UsageException("端口无效：" + options.port);
+                        }
+                        break;
+                    case "-m":
+                        String mode = value(args, ++i, arg);
+                        if (!"encrypt".equals(mode) && !"decrypt".equals(mode)) {
+                            throw new UsageException("未知模式：" + mode);
+                        }
+                        options.benchDecrypt = "decrypt".equals(mode);
+                        break;
+                    case "-c":
+                        options.connections = positive(value(args, ++i, arg), arg);
+                        break;
+                    case "-d":
+                        options.depth = positive(value(args, ++i, arg), arg);
+                        break;
+                    case "-n":
+                        options.seconds = positive(value(args, ++i, arg), arg);
+                        break;
+                    case "-l":
+                        options.length = positive(value(args, ++i, arg), arg);
+                        break;
+                    case "-s":
+                        options.storeDir = new File(value(args, ++i, arg));
+                        break;
+                    case "-o":
+                        options.output = new File(value(args, ++i, arg));
+                        break;
+                    default:
+                        if (arg.startsWith("-") && arg.length() > 1) {
+                            throw new UsageException("未知选项：" + arg);
+                        }
+                        options.inputs.add(new File(arg));
+                }
+            }
+            if ("encrypt".equals(options.command) && (options.key == null || options.key.isEmpty())) {
+                throw new UsageException("加密需要用-k指定凭证");
+            }
+            return options;
+        }
+
+        private static String value(String[] args, int index, String option) {
+            if (index >= args.length) {
+                throw new UsageException(option + "缺少参数");
+            }
+            return args[index];
+        }
+
+        private static int number(String value, String option) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new UsageException(option + "需要一个整数：" + value);
+            }
+        }
+
+        private static int positive(String value, String option) {
+            int number = number(value, option);
+            if (number <= 0) {
+                throw new UsageException(option + "必须大于0");
+            }
+            return number;
+        }
+    }
+}
@@ -0,0 +1,711 @@
+package com.example.kun_said.cli;
+
+import com.example.kun_said.util.EncryptionUtil;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 坤曰加密解密服务
+ * 一个选择器线程负责所有连接的接受、读取和写出，同一端口同时支持长度前缀协议（见FrameProtocol）
+ * 和HTTP/1.1，按连接的第一个字节区分。一个连接上可以连续发送多个请求而不等待响应，
+ * 响应按请求顺序写回。每轮select读到的所有请求合并为一批交给工作线程，
+ * 通过encryptAll/decryptAll整批访问映射存储。
+ *
+ * HTTP接口：
+ * POST /encrypt?key=凭证&v=1 请求体为原文
+ * POST /decrypt[?key=凭证] 请求体为密文，不带凭证时从密文中提取
+ * GET /stats 映射存储统计
+ */
+final class KunServer {
+    private static final Logger LOG = Logger.getLogger("KunServer");
+
+    private static final int READ_BUFFER_BYTES = 16 * 1024;
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+    // 单个连接上已读取但尚未写出的请求上限，达到后暂停读取该连接
+    private static final int MAX_PENDING_PER_CONNECTION = 1024;
+    // 一批最多包含的请求数
+    private static final int MAX_BATCH = 512;
+
+    private static final int PROTOCOL_UNKNOWN = 0;
+    private static final int PROTOCOL_FRAME = 1;
+    private static final int PROTOCOL_HTTP = 2;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final ExecutorService workers;
+    // 工作线程完成的连接，由选择器线程取出写出
+    private final ConcurrentLinkedQueue<Connection> completed = new ConcurrentLinkedQueue<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    // 以下字段仅在选择器线程上使用
+    private final Set<Connection> connections = new HashSet<>();
+    private List<Request> batch = new ArrayList<>();
+    private volatile boolean stopping;
+    private volatile long graceNanos;
+
+    /**
+     * @param address 监听地址，端口为0时自动分配
+     * @param threads 处理请求的工作线程数
+     */
+    KunServer(InetSocketAddress address, int threads) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        AtomicInteger index = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "kun-handler-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return 实际监听的端口
+     */
+    int port() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    void start() {
+        new Thread(this::loop, "kun-server").start();
+    }
+
+    /**
+     * 平滑关闭：立即停止接受新连接和读取新请求，已读取的请求处理完并写出后再关闭连接
+     * @param grace 等待写出的最长时间，超时后直接关闭
+     */
+    void shutdown(long grace, TimeUnit unit) {
+        graceNanos = unit.toNanos(grace);
+        stopping = true;
+        selector.wakeup();
+    }
+
+    /**
+     * @return 在超时之前完全停止时返回true
+     */
+    boolean awaitStopped(long timeout, TimeUnit unit) throws InterruptedException {
+        return stopped.await(timeout, unit);
+    }
+
+    private void loop() {
+        boolean draining = false;
+        long deadline = 0;
+        try {
+            while (true) {
+                if (stopping && !draining) {
+                    draining = true;
+                    deadline = System.nanoTime() + graceNanos;
+                    serverChannel.close();
+                    for (Connection connection : connections) {
+                        connection.reading = false;
+                        connection.updateInterest();
+                    }
+                }
+                if (draining && (allIdle() || System.nanoTime() - deadline >= 0)) {
+                    break;
+                }
+                selector.select(draining ? 10 : 0);
+
+                Connection done;
+                while ((done = completed.poll()) != null) {
+                    flush(done);
+                }
+                Set<SelectionKey> selected = selector.selectedKeys();
+                for (SelectionKey key : selected) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isWritable()) {
+                        flush(connection);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(connection);
+                    }
+                }
+                selected.clear();
+                dispatch();
+            }
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "服务异常退出", e);
+        } finally {
+            for (Connection connection : new ArrayList<>(connections)) {
+                close(connection);
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "关闭选择器失败", e);
+            }
+            workers.shutdown();
+            try {
+                workers.awaitTermination(graceNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            stopped.countDown();
+        }
+    }
+
+    private boolean allIdle() {
+        for (Connection connection : connections) {
+            if (!connection.pending.isEmpty() || !connection.out.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.add(connection);
+    }
+
+    private void read(Connection connection) {
+        int count;
+        try {
+            count = connection.channel.read(connection.in);
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        if (count < 0) {
+            // 对方不再发送，已读取的请求仍然写回
+            connection.reading = false;
+            connection.closeAfterFlush = true;
+            flush(connection);
+            return;
+        }
+        parse(connection);
+        connection.updateInterest();
+    }
+
+    /**
+     * 解析缓冲区中所有完整的请求
+     */
+    private void parse(Connection connection) {
+        ByteBuffer in = connection.in;
+        in.flip();
+        connection.needed = 0;
+        connection.parsePaused = false;
+        try {
+            while (connection.reading && in.hasRemaining()) {
+                if (connection.pending.size() >= MAX_PENDING_PER_CONNECTION) {
+                    connection.parsePaused = true;
+                    break;
+                }
+                if (connection.protocol == PROTOCOL_UNKNOWN) {
+                    connection.protocol = in.get(in.position()) == 0 ? PROTOCOL_FRAME : PROTOCOL_HTTP;
+                }
+                boolean parsed = connection.protocol == PROTOCOL_FRAME
+                        ? parseFrame(connection) : parseHttp(connection);
+                if (!parsed) {
+                    break;
+                }
+            }
+        } finally {
+            in.compact();
+        }
+        // 不完整的请求超过缓冲区大小时扩容
+        if (connection.needed > in.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(connection.needed, in.capacity() * 2));
+            in.flip();
+            larger.put(in);
+            connection.in = larger;
+        }
+    }
+
+    private boolean parseFrame(Connection connection) {
+        ByteBuffer in = connection.in;
+        int start = in.position();
+        if (in.remaining() < FrameProtocol.HEADER_BYTES) {
+            return false;
+        }
+        int length = in.getInt(start);
+        if (length < 4 || length > FrameProtocol.MAX_FRAME_BYTES) {
+            // 帧边界已经丢失，回复错误后关闭连接
+            respondNow(connection, FrameProtocol.response(FrameProtocol.STATUS_ERROR, "请求长度无效"), true);
+            return false;
+        }
+        int total = FrameProtocol.HEADER_BYTES + length;
+        if (in.remaining() < total) {
+            connection.needed = total;
+            return false;
+        }
+        byte op = in.get(start + 4);
+        int version = in.get(start + 5);
+        int keyLength = in.getShort(start + 6) & 0xFFFF;
+        int contentLength = length - 4 - keyLength;
+        in.position(start + total);
+        if (contentLength < 0) {
+            respondNow(connection, FrameProtocol.response(FrameProtocol.STATUS_ERROR, "凭证长度无效"), true);
+            return false;
+        }
+        String key = keyLength > 0 ? utf8(in, start + 8, keyLength) : null;
+        String content = utf8(in, start + 8 + keyLength, contentLength);
+
+        String error = validate(op, version, key);
+        if (error != null) {
+            respondNow(connection, FrameProtocol.response(FrameProtocol.STATUS_ERROR, error), false);
+            return true;
+        }
+        enqueue(new Request(connection, false, false, op, version, key, content));
+        return true;
+    }
+
+    private boolean parseHttp(Connection connection) {
+        ByteBuffer in = connection.in;
+        int start = in.position();
+        int headerEnd = indexOfHeaderEnd(in);
+        if (headerEnd < 0) {
+            if (in.remaining() >= MAX_HEADER_BYTES) {
+                respondNow(connection, httpResponse(431, "Request Header Fields Too Large", "请求头过大", true), true);
+            }
+            return false;
+        }
+        String[] lines = new String(in.array(), in.arrayOffset() + start, headerEnd - start,
+                StandardCharsets.ISO_8859_1).split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            respondNow(connection, httpResponse(400, "Bad Request", "请求行无效", true), true);
+            return false;
+        }
+        long contentLength = 0;
+        String connectionHeader = null;
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = lines[i].substring(colon + 1).trim();
+            if ("content-length".equals(name)) {
+                try {
+                    contentLength = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    contentLength = -1;
+                }
+            } else if ("connection".equals(name)) {
+                connectionHeader = value;
+            } else if ("transfer-encoding".equals(name)) {
+                respondNow(connection, httpResponse(501, "Not Implemented", "不支持分块传输，请使用Content-Length", true), true);
+                return false;
+            }
+        }
+        if (contentLength < 0 || contentLength > FrameProtocol.MAX_FRAME_BYTES) {
+            respondNow(connection, httpResponse(413, "Payload Too Large", "请求体长度无效", true), true);
+            return false;
+        }
+        int total = headerEnd + 4 - start + (int) contentLength;
+        if (in.remaining() < total) {
+            connection.needed = total;
+            return false;
+        }
+        String body = utf8(in, headerEnd + 4, (int) contentLength);
+        in.position(start + total);
+
+        boolean close = "HTTP/1.0".equals(requestLine[2])
+                ? !"keep-alive".equalsIgnoreCase(connectionHeader)
+                : "close".equalsIgnoreCase(connectionHeader);
+        if (close) {
+            // 之后的请求不再读取
+            connection.reading = false;
+        }
+        route(connection, requestLine[0], requestLine[1], body, close);
+        return true;
+    }
+
+    private void route(Connection connection, String method, String target, String body, boolean close) {
+        int question = target.indexOf('?');
+        String path = question >= 0 ? target.substring(0, question) : target;
+        String key = null;
+        int version = EncryptionUtil.VERSION_MAPPED;
+        if (question >= 0) {
+            for (String parameter : target.substring(question + 1).split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals <= 0) {
+                    continue;
+                }
+                String name = parameter.substring(0, equals);
+                String value;
+                try {
+                    value = URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    respondNow(connection, httpResponse(400, "Bad Request", "参数编码无效", close), close);
+                    return;
+                }
+                if ("key".equals(name)) {
+                    key = value.isEmpty() ? null : value;
+                } else if ("v".equals(name)) {
+                    try {
+                        version = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        version = -1;
+                    }
+                }
+            }
+        }
+
+        byte op;
+        switch (path) {
+            case "/encrypt":
+                op = FrameProtocol.OP_ENCRYPT;
+                break;
+            case "/decrypt":
+                op = FrameProtocol.OP_DECRYPT;
+                break;
+            case "/stats":
+                if (!"GET".equals(method)) {
+                    respondNow(connection, httpResponse(405, "Method Not Allowed", "请使用GET", close), close);
+                } else {
+                    respondNow(connection, httpResponse(200, "OK",
+                            EncryptionUtil.getStoreStats().toString(), close), close);
+                }
+                return;
+            default:
+                respondNow(connection, httpResponse(404, "Not Found", "未知路径：" + path, close), close);
+                return;
+        }
+        if (!"POST".equals(method)) {
+            respondNow(connection, httpResponse(405, "Method Not Allowed", "请使用POST", close), close);
+            return;
+        }
+        String error = validate(op, version, key);
+        if (error != null) {
+            respondNow(connection, httpResponse(400, "Bad Request", error, close), close);
+            return;
+        }
+        enqueue(new Request(connection, true, close, op, version, key, body));
+    }
+
+    /**
+     * @return 请求无效时的错误信息，有效时为null
+     */
+    private static String validate(byte op, int version, String key) {
+        if (op == FrameProtocol.OP_ENCRYPT) {
+            if (key == null) {
+                return "加密需要凭证";
+            }
+            if (version != EncryptionUtil.VERSION_MAPPED && version != EncryptionUtil.VERSION_SELF_CONTAINED) {
+                return "不支持的版本：" + version;
+            }
+            return null;
+        }
+        return op == FrameProtocol.OP_DECRYPT ? null : "未知操作：" + op;
+    }
+
+    private void enqueue(Request request) {
+        request.connection.pending.add(request.response);
+        batch.add(request);
+        if (batch.size() >= MAX_BATCH) {
+            dispatch();
+        }
+    }
+
+    /**
+     * 不经过工作线程直接排入一个响应，仍然按请求顺序写出
+     */
+    private void respondNow(Connection connection, ByteBuffer data, boolean close) {
+        Response response = new Response(close);
+        response.data = data;
+        connection.pending.add(response);
+        if (close) {
+            connection.reading = false;
+        }
+        flush(connection);
+    }
+
+    private void dispatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Request> current = batch;
+        batch = new ArrayList<>();
+        workers.execute(() -> process(current));
+    }
+
+    /**
+     * 在工作线程上处理一批请求，同一版本的加密和所有解密各自整批调用一次
+     */
+    private void process(List<Request> requests) {
+        try {
+            List<Request> mapped = new ArrayList<>();
+            List<Request> selfContained = new ArrayList<>();
+            List<Request> decrypts = new ArrayList<>();
+            List<String> decryptKeys = new ArrayList<>();
+            for (Request request : requests) {
+                if (request.op == FrameProtocol.OP_ENCRYPT) {
+                    (request.version == EncryptionUtil.VERSION_SELF_CONTAINED ? selfContained : mapped).add(request);
+                    continue;
+                }
+                String key = request.key != null ? request.key : EncryptionUtil.extractKey(request.content);
+                if (key == null) {
+                    complete(request, KunCli.BAD_FORMAT);
+                } else {
+                    decrypts.add(request);
+                    decryptKeys.add(key);
+                }
+            }
+            encrypt(mapped, EncryptionUtil.VERSION_MAPPED);
+            encrypt(selfContained, EncryptionUtil.VERSION_SELF_CONTAINED);
+            if (!decrypts.isEmpty()) {
+                List<String> results = EncryptionUtil.decryptAll(contents(decrypts), decryptKeys);
+                for (int i = 0; i < decrypts.size(); i++) {
+                    complete(decrypts.get(i), results.get(i));
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "处理请求失败", e);
+            for (Request request : requests) {
+                if (request.response.data == null) {
+                    fail(request, "处理失败：" + e.getMessage());
+                }
+            }
+        } finally {
+            Set<Connection> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Request request : requests) {
+                if (touched.add(request.connection)) {
+                    completed.add(request.connection);
+                }
+            }
+            selector.wakeup();
+        }
+    }
+
+    private static void encrypt(List<Request> requests, int version) {
+        if (requests.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            keys.add(request.key);
+        }
+        List<String> results = EncryptionUtil.encryptAll(contents(requests), keys, version);
+        for (int i = 0; i < requests.size(); i++) {
+            complete(requests.get(i), results.get(i));
+        }
+    }
+
+    private static List<String> contents(List<Request> requests) {
+        List<String> contents = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            contents.add(request.content);
+        }
+        return contents;
+    }
+
+    private static void complete(Request request, String result) {
+        if (result == null) {
+            // 单条没有结果时只让这一条失败，不影响同批的其他请求
+            fail(request, OrderedPipeline.NO_RESULT);
+            return;
+        }
+        request.response.data = request.http
+                ? httpResponse(200, "OK", result, request.response.close)
+                : FrameProtocol.response(FrameProtocol.STATUS_OK, result);
+    }
+
+    private static void fail(Request request, String message) {
+        request.response.data = request.http
+                ? httpResponse(500, "Internal Server Error", message, request.response.close)
+                : FrameProtocol.response(FrameProtocol.STATUS_ERROR, message);
+    }
+
+    /**
+     * 按请求顺序写出已完成的响应，一次系统调用尽量写出多个
+     */
+    private void flush(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        Response head;
+        while ((head = connection.pending.peek()) != null && head.data != null) {
+            connection.pending.poll();
+            connection.out.add(head.data);
+            if (head.close) {
+                connection.closeAfterFlush = true;
+                connection.reading = false;
+            }
+        }
+        try {
+            while (!connection.out.isEmpty()) {
+                long written = connection.channel.write(connection.out.toArray(new ByteBuffer[0]));
+                while (!connection.out.isEmpty() && !connection.out.peek().hasRemaining()) {
+                    connection.out.poll();
+                }
+                if (written == 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        if (connection.closeAfterFlush && connection.out.isEmpty() && connection.pending.isEmpty()) {
+            close(connection);
+            return;
+        }
+        if (connection.parsePaused && connection.pending.size() < MAX_PENDING_PER_CONNECTION) {
+            parse(connection);
+        }
+        connection.updateInterest();
+    }
+
+    private void close(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        connection.closed = true;
+        connections.remove(connection);
+        if (connection.key != null) {
+            connection.key.cancel();
+        }
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "关闭连接失败", e);
+        }
+    }
+
+    private static int indexOfHeaderEnd(ByteBuffer in) {
+        byte[] array = in.array();
+        int offset = in.arrayOffset();
+        int limit = Math.min(in.limit(), in.position() + MAX_HEADER_BYTES);
+        for (int i = in.position(); i + 3 < limit; i++) {
+            if (array[offset + i] == '\r' && array[offset + i + 1] == '\n'
+                    && array[offset + i + 2] == '\r' && array[offset + i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String utf8(ByteBuffer buffer, int index, int length) {
+        return new String(buffer.array(), buffer.arrayOffset() + index, length, StandardCharsets.UTF_8);
+    }
+
+    static ByteBuffer httpResponse(int status, String reason, String body, boolean close) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 " + status + " " + reason + "\r\n"
+                + "Content-Type: text/plain; charset=utf-8\r\n"
+                + "Content-Length: " + bytes.length + "\r\n"
+                + (close ? "Connection: close\r\n" : "")
+                + "\r\n";
+        byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer data = ByteBuffer.allocate(headBytes.length + bytes.length);
+        data.put(headBytes).put(bytes);
+        data.flip();
+        return data;
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final ArrayDeque<Response> pending = new ArrayDeque<>();
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        SelectionKey key;
+        ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        int protocol = PROTOCOL_UNKNOWN;
+        // 缓冲区中不完整的请求需要的总字节数
+        int needed;
+        boolean reading = true;
+        // 因待写出的请求过多暂停了解析
+        boolean parsePaused;
+        boolean closeAfterFlush;
+        boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void updateInterest() {
+            if (closed || !key.isValid()) {
+                return;
+            }
+            int ops = 0;
+            if (reading && !parsePaused) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (!out.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+    }
+
+    /**
+     * 一个请求的响应槽位，在选择器线程上按请求顺序排队，由工作线程填入内容
+     */
+    private static final class Response {
+        final boolean close;
+        volatile ByteBuffer data;
+
+        Response(boolean close) {
+            this.close = close;
+        }
+    }
+
+    private static final class Request {
+        final Connection connection;
+        final Response response;
+        final boolean http;
+        final byte op;
+        final int version;
+        final String key;
+        final String content;
+
+        Request(Connection connection, boolean http, boolean close,
+                byte op, int version, String key, String content) {
+            this.connection = connection;
+            this.response = new Response(close);
+            this.http = http;
+            this.op = op;
+            this.version = version;
+            this.key = key;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.kun_said.cli;
+
+import com.example.kun_said.util.LatencyHistogram;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 服务模式的压测客户端
+ * 每个连接一个线程，使用长度前缀协议，连接上始终保持depth个未完成的请求，
+ * 运行指定时长后输出每秒请求数和延迟分位。延迟从请求写入发送缓冲区开始计算，包含排队时间。
+ */
+final class LoadGenerator {
+    // 每个连接预先生成的不同请求数，避免所有请求都落在同一条映射上
+    private static final int DISTINCT_REQUESTS = 256;
+    private static final String ALPHABET = "只因你太美坤曰鸡你实在是太美baby";
+
+    private final InetSocketAddress address;
+    private final int connections;
+    private final int depth;
+    private final long durationNanos;
+    private final int length;
+    private final boolean decrypt;
+    private final int version;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    /**
+     * @param connections 并发连接数
+     * @param depth 每个连接上同时未完成的请求数
+     * @param durationNanos 运行时长
+     * @param length 原文字符数
+     * @param decrypt 压测解密，否则压测加密
+     * @param version 加密使用的编码版本
+     */
+    LoadGenerator(InetSocketAddress address, int connections, int depth, long durationNanos,
+                  int length, boolean decrypt, int version) {
+        this.address = address;
+        this.connections = connections;
+        this.depth = depth;
+        this.durationNanos = durationNanos;
+        this.length = length;
+        this.decrypt = decrypt;
+        this.version = version;
+    }
+
+    /**
+     * 运行压测，结果输出到标准错误
+     */
+    void run() throws IOException, InterruptedException {
+        Thread[] threads = new Thread[connections];
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        for (int i = 0; i < connections; i++) {
+            long seed = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    drive(new Random(seed), end);
+                } catch (EOFException e) {
+                    failure.compareAndSet(null, new IOException("服务端关闭了连接", e));
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "kun-load-" + (i + 1));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        IOException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+        LatencyHistogram.Snapshot snapshot = latency.snapshot();
+        System.err.println(String.format(Locale.ROOT,
+                "%s，%d个连接，每连接%d个未完成请求，原文%d字符",
+                decrypt ? "解密" : "加密", connections, depth, length));
+        System.err.println(String.format(Locale.ROOT,
+                "%d次请求，%d次错误，耗时%.1fs，%.0f次/秒",
+                snapshot.count, errors.get(), elapsed / 1e9, snapshot.count / (elapsed / 1e9)));
+        System.err.println("延迟 " + snapshot);
+    }
+
+    private void drive(Random random, long end) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.setTcpNoDelay(true);
+            socket.connect(address);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            byte[][] requests = requests(random, out, in);
+
+            // 环形记录每个未完成请求的发送时间，响应按发送顺序返回
+            long[] sent = new long[depth];
+            int head = 0;
+            int outstanding = 0;
+            int next = 0;
+            while (outstanding < depth) {
+                sent[(head + outstanding) % depth] = System.nanoTime();
+                out.write(requests[next++ % requests.length]);
+                outstanding++;
+            }
+            while (outstanding > 0) {
+                // 输入缓冲区空了才会阻塞读取，阻塞之前把攒下的请求发出去
+                if (in.available() == 0) {
+                    out.flush();
+                }
+                byte status = readResponse(in);
+                long now = System.nanoTime();
+                latency.record(now - sent[head]);
+                head = (head + 1) % depth;
+                outstanding--;
+                if (status != FrameProtocol.STATUS_OK) {
+                    errors.incrementAndGet();
+                }
+                if (now - end < 0) {
+                    sent[(head + outstanding) % depth] = now;
+                    out.write(requests[next++ % requests.length]);
+                    outstanding++;
+                }
+            }
+        }
+    }
+
+    /**
+     * 生成请求；压测解密时先通过服务加密得到密文
+     */
+    private byte[][] requests(Random random, DataOutputStream out, DataInputStream in) throws IOException {
+        byte[][] requests = new byte[DISTINCT_REQUESTS][];
+        for (int i = 0; i < requests.length; i++) {
+            String key = "凭证" + random.nextInt(1000);
+            ByteBuffer frame = FrameProtocol.request(FrameProtocol.OP_ENCRYPT, version, key, randomText(random));
+            if (decrypt) {
+                out.write(frame.array());
+                out.flush();
+                frame = FrameProtocol.request(FrameProtocol.OP_DECRYPT, version, null, readText(in));
+            }
+            requests[i] = frame.array();
+        }
+        return requests;
+    }
+
+    private String randomText(Random random) {
+        char[] text = new char[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(text);
+    }
+
+    /**
+     * 读取一个响应并丢弃内容
+     * @return 响应状态
+     */
+    private static byte readResponse(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        byte status = in.readByte();
+        in.skipNBytes(length - 1);
+        return status;
+    }
+
+    /**
+     * 读取一个成功响应的文本
+     */
+    private static String readText(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        byte status = in.readByte();
+        byte[] text = new byte[length - 1];
+        in.readFully(text);
+        String result = new String(text, StandardCharsets.UTF_8);
+        if (status != FrameProtocol.STATUS_OK) {
+            throw new IOException(result);
+        }
+        return result;
+    }
+}
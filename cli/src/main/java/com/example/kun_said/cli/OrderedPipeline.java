@@ -0,0 +1,196 @@
+package com.example.kun_said.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 保持输入顺序的多线程逐行处理流水线
+ * 读取线程给每行编号后放入有界队列，多个工作线程并行处理，结果按编号放入重排窗口，
+ * 调用线程按输入顺序写出。同时在处理中的行数不超过窗口大小：输出跟不上时读取会阻塞，
+ * 内存占用只与窗口大小有关，与输入总量无关。
+ */
+final class OrderedPipeline {
+    private static final Item END = new Item(-1, null);
+    static final String NO_RESULT = "处理失败：没有结果";
+
+    private final int threads;
+    private final int window;
+    private final LineFunction function;
+
+    /**
+     * 每行的处理逻辑，会在多个工作线程上同时调用，返回null时输出一行错误信息
+     */
+    interface LineFunction {
+        String apply(String line);
+    }
+
+    /**
+     * @param threads 工作线程数
+     * @param window 同时在处理中的最大行数
+     */
+    OrderedPipeline(int threads, int window, LineFunction function) {
+        if (threads <= 0 || window <= 0) {
+            throw new IllegalArgumentException("threads和window必须大于0");
+        }
+        this.threads = threads;
+        this.window = window;
+        this.function = function;
+    }
+
+    /**
+     * 处理全部输入，返回时所有结果都已写出
+     * @param in 输入，每行一条
+     * @param out 输出，每条结果一行，顺序与输入一致
+     * @return 处理的行数
+     */
+    long run(BufferedReader in, Writer out) throws IOException, InterruptedException {
+        Semaphore permits = new Semaphore(window);
+        // 多留出结束标记的位置，读取结束时放入标记不会失败
+        BlockingQueue<Item> work = new ArrayBlockingQueue<>(window + threads);
+        ReorderWindow results = new ReorderWindow(window);
+        AtomicReference<IOException> readFailure = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            long sequence = 0;
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    // 窗口已满时在这里等待写出，形成背压
+                    permits.acquire();
+                    work.put(new Item(sequence++, line));
+                }
+            } catch (IOException e) {
+                readFailure.set(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                results.finish(sequence);
+                for (int i = 0; i < threads; i++) {
+                    work.offer(END);
+                }
+            }
+        }, "kun-reader");
+        reader.setDaemon(true);
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                try {
+                    while (true) {
+                        Item item = work.take();
+                        if (item == END) {
+                            return;
+                        }
+                        String result;
+                        try {
+                            result = function.apply(item.line);
+                        } catch (RuntimeException e) {
+                            result = "处理失败：" + e.getMessage();
+                        }
+                        if (result == null) {
+                            // 重排窗口以null表示尚未完成，写出方会一直等待
+                            result = NO_RESULT;
+                        }
+                        results.put(item.sequence, result);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "kun-worker-" + (i + 1));
+            workers[i].setDaemon(true);
+        }
+
+        reader.start();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        long written = 0;
+        try {
+            String result;
+            while ((result = results.take(written)) != null) {
+                out.write(result);
+                out.write('\n');
+                written++;
+                permits.release();
+            }
+        } finally {
+            // 写出失败时让读取和工作线程尽快退出；都是守护线程，不会阻止进程结束
+            reader.interrupt();
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+        }
+        reader.join();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        IOException failure = readFailure.get();
+        if (failure != null) {
+            throw failure;
+        }
+        return written;
+    }
+
+    private static final class Item {
+        final long sequence;
+        final String line;
+
+        Item(long sequence, String line) {
+            this.sequence = sequence;
+            this.line = line;
+        }
+    }
+
+    /**
+     * 按编号保存乱序完成的结果，编号对窗口大小取模作为槽位。
+     * 读取方保证在处理中的行数不超过窗口大小，槽位不会冲突
+     */
+    private static final class ReorderWindow {
+        private final String[] slots;
+        // 以下字段由this保护
+        private long next;
+        private long total = -1;
+
+        ReorderWindow(int window) {
+            slots = new String[window];
+        }
+
+        synchronized void put(long sequence, String result) {
+            slots[(int) (sequence % slots.length)] = result;
+            // 只有写出方正在等待的结果才需要唤醒
+            if (sequence == next) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * 输入读完后设置总行数
+         */
+        synchronized void finish(long count) {
+            total = count;
+            notifyAll();
+        }
+
+        /**
+         * @return 编号为sequence的结果，全部写出后返回null
+         */
+        synchronized String take(long sequence) throws InterruptedException {
+            next = sequence;
+            int slot = (int) (sequence % slots.length);
+            while (slots[slot] == null) {
+                if (total >= 0 && sequence >= total) {
+                    return null;
+                }
+                wait();
+            }
+            String result = slots[slot];
+            slots[slot] = null;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.kun_said.cli;
+
+import com.example.kun_said.util.EncryptionUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 服务模式的测试：同一连接上连续发送的请求按顺序得到响应，两种协议都支持，
+ * 关闭时已读取的请求仍然写回
+ */
+public class KunServerTest {
+    private KunServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new KunServer(new InetSocketAddress("127.0.0.1", 0), 4);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        server.shutdown(1, TimeUnit.SECONDS);
+        server.awaitStopped(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void frames_pipelinedResponsesKeepRequestOrder() throws IOException {
+        int count = 2_000;
+        try (Socket socket = connect()) {
+            ByteArrayOutputStream requests = new ByteArrayOutputStream();
+            for (int i = 0; i < count; i++) {
+                int version = i % 2 == 0 ? EncryptionUtil.VERSION_MAPPED : EncryptionUtil.VERSION_SELF_CONTAINED;
+                write(requests, FrameProtocol.request(FrameProtocol.OP_ENCRYPT, version, "凭证" + i, "原文" + i));
+            }
+            socket.getOutputStream().write(requests.toByteArray());
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            List<String> encrypted = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Frame frame = readFrame(in);
+                assertEquals(FrameProtocol.STATUS_OK, frame.status);
+                assertEquals("凭证" + i, EncryptionUtil.extractKey(frame.text));
+                encrypted.add(frame.text);
+            }
+
+            requests.reset();
+            for (int i = 0; i < count; i++) {
+                // 一半带凭证，一半从密文中提取
+                String key = i % 2 == 0 ? "凭证" + i : null;
+                write(requests, FrameProtocol.request(FrameProtocol.OP_DECRYPT, 0, key, encrypted.get(i)));
+            }
+            socket.getOutputStream().write(requests.toByteArray());
+            for (int i = 0; i < count; i++) {
+                Frame frame = readFrame(in);
+                assertEquals(FrameProtocol.STATUS_OK, frame.status);
+                assertEquals("原文" + i, frame.text);
+            }
+        }
+    }
+
+    @Test
+    public void frames_invalidRequestFailsOnlyThatRequest() throws IOException {
+        try (Socket socket = connect()) {
+            ByteArrayOutputStream requests = new ByteArrayOutputStream();
+            write(requests, FrameProtocol.request(FrameProtocol.OP_ENCRYPT, 1, "凭证", "一"));
+            write(requests, FrameProtocol.request(FrameProtocol.OP_ENCRYPT, 1, null, "二"));
+            write(requests, FrameProtocol.request(FrameProtocol.OP_ENCRYPT, 9, "凭证", "三"));
+            write(requests, FrameProtocol.request(FrameProtocol.OP_DECRYPT, 0, null, "不是密文"));
+            write(requests, FrameProtocol.request(FrameProtocol.OP_ENCRYPT, 2, "凭证", "四"));
+            socket.getOutputStream().write(requests.toByteArray());
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertEquals(FrameProtocol.STATUS_OK, readFrame(in).status);
+            assertEquals(new Frame(FrameProtocol.STATUS_ERROR, "加密需要凭证"), readFrame(in));
+            assertEquals(new Frame(FrameProtocol.STATUS_ERROR, "不支持的版本：9"), readFrame(in));
+            assertEquals(new Frame(FrameProtocol.STATUS_OK, KunCli.BAD_FORMAT), readFrame(in));
+            Frame last = readFrame(in);
+            assertEquals(FrameProtocol.STATUS_OK, last.status);
+            assertEquals("四", EncryptionUtil.decrypt(last.text, "凭证"));
+        }
+    }
+
+    @Test
+    public void http_pipelinedRequestsAnsweredInOrderUntilClose() throws IOException {
+        try (Socket socket = connect()) {
+            String body = "只因你太美";
+            byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+            String requests = "POST /encrypt?key=%E5%9D%A4&v=2 HTTP/1.1\r\n"
+                    + "Content-Length: " + bodyBytes.length + "\r\n\r\n" + body
+                    + "GET /nowhere HTTP/1.1\r\n\r\n"
+                    + "GET /stats HTTP/1.1\r\nConnection: close\r\n\r\n";
+            socket.getOutputStream().write(requests.getBytes(StandardCharsets.UTF_8));
+
+            // 最后一个请求要求关闭，读到连接结束即为全部响应
+            String responses = new String(readAll(socket.getInputStream()), StandardCharsets.UTF_8);
+            List<String[]> parsed = parseHttp(responses);
+            assertEquals(3, parsed.size());
+            assertTrue(parsed.get(0)[0].startsWith("HTTP/1.1 200"));
+            assertEquals(body, EncryptionUtil.decrypt(parsed.get(0)[1], "坤"));
+            assertTrue(parsed.get(1)[0].startsWith("HTTP/1.1 404"));
+            assertEquals("未知路径：/nowhere", parsed.get(1)[1]);
+            assertTrue(parsed.get(2)[0].startsWith("HTTP/1.1 200"));
+            assertTrue(parsed.get(2)[0].contains("Connection: close"));
+        }
+    }
+
+    @Test
+    public void shutdown_writesBackRequestsAlreadyRead() throws Exception {
+        int count = 500;
+        try (Socket socket = connect()) {
+            ByteArrayOutputStream requests = new ByteArrayOutputStream();
+            for (int i = 0; i < count; i++) {
+                write(requests, FrameProtocol.request(FrameProtocol.OP_ENCRYPT, 2, "凭证", "原文" + i));
+            }
+            socket.getOutputStream().write(requests.toByteArray());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            // 第一个响应到达说明请求已被读取
+            Frame first = readFrame(in);
+            server.shutdown(10, TimeUnit.SECONDS);
+
+            assertEquals("原文0", EncryptionUtil.decrypt(first.text, "凭证"));
+            int received = 1;
+            // 已读取的请求全部写回后服务端关闭连接，响应之间不会缺失或错位
+            while (true) {
+                Frame frame;
+                try {
+                    frame = readFrame(in);
+                } catch (EOFException e) {
+                    break;
+                }
+                assertEquals("原文" + received, EncryptionUtil.decrypt(frame.text, "凭证"));
+                received++;
+            }
+            assertTrue(received <= count);
+            assertTrue(server.awaitStopped(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void shutdown_stopsAcceptingConnections() throws Exception {
+        int port = server.port();
+        server.shutdown(1, TimeUnit.SECONDS);
+        assertTrue(server.awaitStopped(5, TimeUnit.SECONDS));
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", port), 1_000);
+            // 连接被拒绝时不会执行到这里
+            assertEquals(-1, socket.getInputStream().read());
+        } catch (IOException expected) {
+            // 端口已关闭
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.port());
+        socket.setSoTimeout(30_000);
+        return socket;
+    }
+
+    private static void write(OutputStream out, ByteBuffer frame) throws IOException {
+        out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+    }
+
+    private static Frame readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        byte status = in.readByte();
+        byte[] text = new byte[length - 1];
+        in.readFully(text);
+        return new Frame(status, new String(text, StandardCharsets.UTF_8));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return 每个响应的头部和正文
+     */
+    private static List<String[]> parseHttp(String responses) {
+        List<String[]> parsed = new ArrayList<>();
+        int position = 0;
+        while (position < responses.length()) {
+            int headerEnd = responses.indexOf("\r\n\r\n", position);
+            String head = responses.substring(position, headerEnd + 2);
+            int lengthStart = head.indexOf("Content-Length: ") + "Content-Length: ".length();
+            int length = Integer.parseInt(head.substring(lengthStart, head.indexOf("\r\n", lengthStart)));
+            byte[] rest = responses.substring(headerEnd + 4).getBytes(StandardCharsets.UTF_8);
+            String body = new String(rest, 0, length, StandardCharsets.UTF_8);
+            parsed.add(new String[]{head, body});
+            position = headerEnd + 4 + body.length();
+        }
+        return parsed;
+    }
+
+    private static final class Frame {
+        final byte status;
+        final String text;
+
+        Frame(byte status, String text) {
+            this.status = status;
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Frame && ((Frame) other).status == status && ((Frame) other).text.equals(text);
+        }
+
+        @Override
+        public int hashCode() {
+            return status * 31 + text.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return status + ":" + text;
+        }
+    }
+}
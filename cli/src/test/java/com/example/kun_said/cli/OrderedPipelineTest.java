@@ -0,0 +1,142 @@
+package com.example.kun_said.cli;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 有序流水线的测试：乱序完成的结果按输入顺序写出，输出阻塞时在处理中的行数不超过窗口大小
+ */
+public class OrderedPipelineTest {
+
+    @Test
+    public void run_keepsInputOrder() throws Exception {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            input.append("行").append(i).append('\n');
+            expected.append("结果行").append(i).append('\n');
+        }
+        OrderedPipeline pipeline = new OrderedPipeline(8, 16, line -> {
+            // 打乱完成顺序
+            if (ThreadLocalRandom.current().nextInt(100) == 0) {
+                Thread.yield();
+            }
+            return "结果" + line;
+        });
+        StringWriter out = new StringWriter();
+
+        long count = pipeline.run(new BufferedReader(new StringReader(input.toString())), out);
+
+        assertEquals(20_000, count);
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    public void run_emptyInputWritesNothing() throws Exception {
+        OrderedPipeline pipeline = new OrderedPipeline(4, 4, line -> line);
+        StringWriter out = new StringWriter();
+
+        assertEquals(0, pipeline.run(new BufferedReader(new StringReader("")), out));
+        assertEquals("", out.toString());
+    }
+
+    @Test
+    public void run_turnsExceptionsIntoErrorLines() throws Exception {
+        OrderedPipeline pipeline = new OrderedPipeline(4, 8, line -> {
+            if (line.startsWith("坏")) {
+                throw new IllegalArgumentException(line);
+            }
+            return line;
+        });
+        StringWriter out = new StringWriter();
+
+        long count = pipeline.run(new BufferedReader(new StringReader("好1\n坏2\n好3\n")), out);
+
+        assertEquals(3, count);
+        assertEquals("好1\n处理失败：坏2\n好3\n", out.toString());
+    }
+
+    @Test(timeout = 10_000)
+    public void run_turnsNullResultsIntoErrorLines() throws Exception {
+        OrderedPipeline pipeline = new OrderedPipeline(2, 4, line -> line.isEmpty() ? null : line);
+        StringWriter out = new StringWriter();
+
+        long count = pipeline.run(new BufferedReader(new StringReader("一\n\n三\n")), out);
+
+        assertEquals(3, count);
+        assertEquals("一\n" + OrderedPipeline.NO_RESULT + "\n三\n", out.toString());
+    }
+
+    @Test
+    public void run_blockedOutputBoundsLinesInFlight() throws Exception {
+        int window = 32;
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            input.append(i).append('\n');
+        }
+        AtomicInteger started = new AtomicInteger();
+        OrderedPipeline pipeline = new OrderedPipeline(4, window, line -> {
+            started.incrementAndGet();
+            return line;
+        });
+        CountDownLatch release = new CountDownLatch(1);
+        StringWriter sink = new StringWriter();
+        Writer out = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                sink.write(buffer, offset, length);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread runner = new Thread(() -> {
+            try {
+                pipeline.run(new BufferedReader(new StringReader(input.toString())), out);
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        runner.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (started.get() < window && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        // 给读取线程足够的时间越过窗口，如果背压失效这里会看到更多的行
+        Thread.sleep(200);
+        assertEquals(window, started.get());
+
+        release.countDown();
+        runner.join(TimeUnit.SECONDS.toMillis(30));
+        assertFalse(runner.isAlive());
+        assertNull(failure.get());
+        assertEquals(10_000, started.get());
+        assertEquals(input.toString(), sink.toString());
+    }
+}
@@ -0,0 +1,15 @@
+// 坤曰核心算法：编码、映射存储和持久化日志
+// 纯Java模块，不依赖Android，供应用、命令行工具和基准测试共用
+plugins {
+    `java-library`
+}
+
+java {
+    // 与应用模块的compileOptions保持一致
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation("junit:junit:4.13.2")
+}
@@ -0,0 +1,102 @@
+package com.example.kun_said.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 计数布隆过滤器
+ * 每个位置是一个4位计数器，条目删除时可以减回去；计数达到15后不再变化，避免减到0造成漏判。
+ * 查询无锁、不分配对象，写入需要调用方保证串行。
+ */
+final class CountingBloomFilter {
+    private static final int HASHES = 6;
+    // 每个条目预留8个计数器，满载时误判率约2%，半满时约0.1%
+    private static final int COUNTERS_PER_ENTRY = 8;
+    private static final int MIN_COUNTERS = 128;
+    private static final long SATURATED = 0xF;
+
+    private final AtomicLongArray words;
+    private final int counters;
+    private final int shift;
+    // 非零计数器的数量，用于估计误判率
+    private volatile int nonZero;
+
+    /**
+     * @param expectedEntries 预计的最大条目数
+     */
+    CountingBloomFilter(int expectedEntries) {
+        long wanted = Math.max(MIN_COUNTERS, (long) expectedEntries * COUNTERS_PER_ENTRY);
+        int bits = 64 - Long.numberOfLeadingZeros(wanted - 1);
+        counters = 1 << Math.min(bits, 30);
+        shift = 64 - Integer.numberOfTrailingZeros(counters);
+        words = new AtomicLongArray(counters / 16);
+    }
+
+    /**
+     * @return 为false时条目一定不存在
+     */
+    boolean mightContain(long high, long low) {
+        long hash = high;
+        for (int i = 0; i < HASHES; i++) {
+            if (counterAt((int) (hash >>> shift)) == 0) {
+                return false;
+            }
+            hash += low;
+        }
+        return true;
+    }
+
+    void add(long high, long low) {
+        long hash = high;
+        for (int i = 0; i < HASHES; i++) {
+            int index = (int) (hash >>> shift);
+            long count = counterAt(index);
+            if (count < SATURATED) {
+                setCounter(index, count + 1);
+                if (count == 0) {
+                    nonZero++;
+                }
+            }
+            hash += low;
+        }
+    }
+
+    void remove(long high, long low) {
+        long hash = high;
+        for (int i = 0; i < HASHES; i++) {
+            int index = (int) (hash >>> shift);
+            long count = counterAt(index);
+            if (count != 0 && count < SATURATED) {
+                setCounter(index, count - 1);
+                if (count == 1) {
+                    nonZero--;
+                }
+            }
+            hash += low;
+        }
+    }
+
+    /**
+     * @return 按当前填充率估计的误判率
+     */
+    double estimatedFalsePositiveRate() {
+        return Math.pow((double) nonZero / counters, HASHES);
+    }
+
+    /**
+     * @return 计数器占用的字节数
+     */
+    long sizeInBytes() {
+        return counters / 2;
+    }
+
+    private long counterAt(int index) {
+        return (words.get(index >>> 4) >>> ((index & 15) << 2)) & SATURATED;
+    }
+
+    private void setCounter(int index, long count) {
+        int word = index >>> 4;
+        int shiftInWord = (index & 15) << 2;
+        long value = words.get(word);
+        words.set(word, (value & ~(SATURATED << shiftInWord)) | (count << shiftInWord));
+    }
+}
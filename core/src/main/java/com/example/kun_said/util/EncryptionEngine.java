@@ -0,0 +1,345 @@
+package com.example.kun_said.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步加密引擎
+ * 在有界的后台线程池中执行加密、解密和凭证提取，结果通过调用方指定的Executor（通常是主线程）回调。
+ * 内容和凭证都相同、仍在执行中的请求会被合并，只计算一次。
+ */
+public final class EncryptionEngine {
+    // 等待队列上限，超出后直接回调繁忙提示而不是无限堆积
+    private static final int QUEUE_CAPACITY = 32;
+    private static final String BUSY = "处理失败：任务过多，请稍后再试";
+
+    private static final int OP_ENCRYPT = 1;
+    private static final int OP_DECRYPT = 2;
+    private static final int OP_EXTRACT_KEY = 3;
+    private static final int OP_ENCRYPT_SOURCE = 4;
+    private static final int OP_DECRYPT_DOCUMENT = 5;
+
+    private static volatile EncryptionEngine shared;
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<RequestKey, Task> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 结果回调
+     */
+    public interface Callback {
+        /**
+         * @param result 处理结果，凭证提取失败时为null
+         */
+        void onResult(String result);
+
+        /**
+         * 任务因队列已满被拒绝，或执行时抛出异常
+         * @param message 失败提示，默认当作普通结果交给onResult显示
+         */
+        default void onFailure(String message) {
+            onResult(message);
+        }
+    }
+
+    /**
+     * 已提交任务的句柄
+     */
+    public interface Job {
+        /**
+         * 取消任务，之后不会再收到回调
+         */
+        void cancel();
+
+        boolean isCancelled();
+    }
+
+    /**
+     * @return 全局共享的引擎
+     */
+    public static EncryptionEngine shared() {
+        EncryptionEngine engine = shared;
+        if (engine == null) {
+            synchronized (EncryptionEngine.class) {
+                engine = shared;
+                if (engine == null) {
+                    int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+                    engine = new EncryptionEngine(threads);
+                    shared = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * @param threads 后台线程数
+     */
+    public EncryptionEngine(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "kun-engine-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), factory);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 异步加密
+     * @param deliverOn 回调所在的Executor
+     */
+    public Job encrypt(String originalContent, String key, int version, Executor deliverOn, Callback callback) {
+        // 不同编码版本的结果不同，不能合并
+        return submit(new RequestKey(OP_ENCRYPT + version * 8, originalContent, key),
+                () -> EncryptionUtil.encrypt(originalContent, key, version), deliverOn, callback);
+    }
+
+    /**
+     * 异步加密文档
+     * 第一版流式加密，映射中只保存原文来源并把来源标识写入持久化日志；
+     * 第二版的密文自带原文，只能整段读入后加密
+     * @param sourceId 来源的唯一标识（如URI），用于合并相同请求和重启后重新打开来源
+     * @param version 编码版本，VERSION_MAPPED或VERSION_SELF_CONTAINED
+     * @param deliverOn 回调所在的Executor
+     */
+    public Job encryptSource(String sourceId, PlaintextSource source, String key, int version,
+                             Executor deliverOn, Callback callback) {
+        return submit(new RequestKey(OP_ENCRYPT_SOURCE + version * 8, sourceId, key), () -> {
+            try (Reader reader = source.open()) {
+                if (version == EncryptionUtil.VERSION_SELF_CONTAINED) {
+                    return EncryptionUtil.encrypt(readAll(reader), key, version);
+                }
+                return EncryptionUtil.encrypt(reader, key, sourceId, source);
+            }
+        }, deliverOn, callback);
+    }
+
+    /**
+     * 异步解密
+     * @param deliverOn 回调所在的Executor
+     */
+    public Job decrypt(String encryptedContent, String key, Executor deliverOn, Callback callback) {
+        return submit(new RequestKey(OP_DECRYPT, encryptedContent, key),
+                () -> EncryptionUtil.decrypt(encryptedContent, key), deliverOn, callback);
+    }
+
+    /**
+     * 异步解密文档中嵌入的所有密文，每条密文使用自带的凭证
+     * @param deliverOn 回调所在的Executor
+     */
+    public Job decryptDocument(String document, Executor deliverOn, Callback callback) {
+        return submit(new RequestKey(OP_DECRYPT_DOCUMENT, document, ""),
+                () -> EncryptionUtil.decryptDocument(document), deliverOn, callback);
+    }
+
+    /**
+     * 异步提取加密凭证
+     * @param deliverOn 回调所在的Executor
+     */
+    public Job extractKey(String encryptedContent, Executor deliverOn, Callback callback) {
+        return submit(new RequestKey(OP_EXTRACT_KEY, encryptedContent, ""),
+                () -> EncryptionUtil.extractKey(encryptedContent), deliverOn, callback);
+    }
+
+    /**
+     * 停止接收新任务，已提交的任务继续执行完
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private Job submit(RequestKey requestKey, Callable<String> work, Executor deliverOn, Callback callback) {
+        Subscriber subscriber = new Subscriber(deliverOn, callback);
+        while (true) {
+            Task task = inFlight.get(requestKey);
+            if (task == null) {
+                Task created = new Task(requestKey, work);
+                task = inFlight.putIfAbsent(requestKey, created);
+                if (task == null) {
+                    created.subscribe(subscriber);
+                    try {
+                        executor.execute(created);
+                    } catch (RejectedExecutionException e) {
+                        created.finish(BUSY, true);
+                    }
+                    return subscriber;
+                }
+            }
+            if (task.subscribe(subscriber)) {
+                return subscriber;
+            }
+            // 任务刚好结束，移除后重新提交
+            inFlight.remove(requestKey, task);
+        }
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[8192];
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+            builder.append(buffer, 0, count);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 合并请求用的键，内容只比较不复制
+     */
+    private static final class RequestKey {
+        final int op;
+        final String content;
+        final String key;
+        final int hash;
+
+        RequestKey(int op, String content, String key) {
+            this.op = op;
+            this.content = content;
+            this.key = key;
+            this.hash = (op * 31 + content.hashCode()) * 31 + key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RequestKey)) {
+                return false;
+            }
+            RequestKey other = (RequestKey) o;
+            return op == other.op && hash == other.hash
+                    && key.equals(other.key) && content.equals(other.content);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final class Task implements Runnable {
+        private final RequestKey requestKey;
+        private final Callable<String> work;
+        // 以下字段由this保护
+        private final List<Subscriber> subscribers = new ArrayList<>(1);
+        private boolean started;
+        private boolean done;
+
+        Task(RequestKey requestKey, Callable<String> work) {
+            this.requestKey = requestKey;
+            this.work = work;
+        }
+
+        synchronized boolean subscribe(Subscriber subscriber) {
+            if (done) {
+                return false;
+            }
+            subscribers.add(subscriber);
+            subscriber.task = this;
+            return true;
+        }
+
+        void unsubscribe(Subscriber subscriber) {
+            boolean abandon;
+            synchronized (this) {
+                subscribers.remove(subscriber);
+                // 还没开始执行且没有人等待结果时直接放弃
+                abandon = subscribers.isEmpty() && !started && !done;
+                if (abandon) {
+                    done = true;
+                }
+            }
+            if (abandon) {
+                inFlight.remove(requestKey, this);
+                executor.remove(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                started = true;
+            }
+            String result;
+            boolean failed = false;
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                result = "处理失败：" + e.getMessage();
+                failed = true;
+            }
+            finish(result, failed);
+        }
+
+        void finish(String result, boolean failed) {
+            List<Subscriber> targets;
+            synchronized (this) {
+                done = true;
+                targets = new ArrayList<>(subscribers);
+                subscribers.clear();
+            }
+            inFlight.remove(requestKey, this);
+            for (Subscriber subscriber : targets) {
+                subscriber.deliver(result, failed);
+            }
+        }
+    }
+
+    private static final class Subscriber implements Job {
+        private final Executor deliverOn;
+        private final Callback callback;
+        private volatile boolean cancelled;
+        volatile Task task;
+
+        Subscriber(Executor deliverOn, Callback callback) {
+            this.deliverOn = deliverOn;
+            this.callback = callback;
+        }
+
+        void deliver(String result, boolean failed) {
+            deliverOn.execute(() -> {
+                // 在回调线程上再检查一次，保证取消之后不会回调
+                if (cancelled) {
+                    return;
+                }
+                if (failed) {
+                    callback.onFailure(result);
+                } else {
+                    callback.onResult(result);
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            Task current = task;
+            if (current != null) {
+                current.unsubscribe(this);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,730 @@
+package com.example.kun_said.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * 坤曰解密工具类
+ */
+public class EncryptionUtil {
+    // 使用java.util.logging，在Android上会转发到logcat
+    private static final Logger LOG = Logger.getLogger("EncryptionUtil");
+
+    // 第一版：密文只是哈希，解密依赖映射存储
+    public static final int VERSION_MAPPED = 1;
+    // 第二版：密文自带原文，任何设备都可解密
+    public static final int VERSION_SELF_CONTAINED = 2;
+    
+    // "只因你太美"五个字及其二进制表示（示例）
+    private static final String[] KUN_CHARS = {"只", "因", "你", "太", "美"};
+    private static final String[] KUN_BINARY = {
+            "11100111 10101001", // 只
+            "10111001 10000101", // 因 
+            "10101101 10000001", // 你
+            "10111101 10010001", // 太
+            "10110011 10001101"  // 美
+    };
+    
+    private static final String MESSAGE_HEADER = MessageScanner.HEADER_V1;
+    private static final String NOT_FOUND = "无法解密：未找到原始内容（本机可能未加密过此内容）";
+
+    // 第一版密文使用哈希的前60个十六进制位，每5个一组，组间一个空格
+    private static final int MAPPED_DIGITS = 60;
+    private static final int MAPPED_BODY_LENGTH = MAPPED_DIGITS + (MAPPED_DIGITS - 1) / 5;
+    // 半字节到"只因你太美"的查找表，与"十六进制字符 & 0x7 再模5"的结果一致
+    private static final char[] NIBBLE_TO_KUN = buildNibbleTable();
+
+    // 每个线程复用自己的摘要对象和字符缓冲区，批量加密时互不争用
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<>();
+    private static final ThreadLocal<char[]> SCRATCH = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[256];
+        }
+    };
+
+    // 流式加密每次读取的字符数，缓冲区大小固定，与原文长度无关
+    private static final int STREAM_CHUNK_CHARS = 8192;
+
+    // 映射存储的默认限额：最多1万条、原文合计16MB，不设过期时间
+    private static final int MAX_ENTRIES = 10000;
+    private static final long MAX_BYTES = 16L * 1024 * 1024;
+
+    // 使用静态存储保存对应关系，确保应用生命周期内可用
+    private static volatile MappingStore encryptionMap = new MappingStore(MAX_ENTRIES, MAX_BYTES, 0);
+
+    // 磁盘日志最多保留64MB有效映射
+    private static final long JOURNAL_MAX_BYTES = 64L * 1024 * 1024;
+    private static final String JOURNAL_FILE_NAME = "kun_mapping.journal";
+
+    // 持久化日志，未初始化时只使用内存映射
+    private static volatile MappingJournal journal;
+    // 第一次成功预热的耗时，0表示尚未预热
+    private static volatile long warmUpNanos;
+    // 把日志中记录的来源标识还原为原文来源，未设置时按引用保存的条目重启后无法解密
+    private static volatile PlaintextSource.Resolver sourceResolver;
+
+    /**
+     * 打开持久化映射日志，使重启后仍可解密之前的内容
+     * 日志恢复在后台线程完成，本方法立即返回
+     * @param dir 日志所在目录，通常为Context.getFilesDir()
+     */
+    public static synchronized void init(File dir) {
+        if (journal == null) {
+            journal = new MappingJournal(new File(dir, JOURNAL_FILE_NAME), JOURNAL_MAX_BYTES);
+        }
+    }
+
+    /**
+     * 设置原文来源的解析器，按引用保存的映射在重启后由它重新打开来源
+     */
+    public static void setSourceResolver(PlaintextSource.Resolver resolver) {
+        sourceResolver = resolver;
+    }
+
+    /**
+     * 写入所有待写的映射并关闭持久化日志，之后只使用内存映射
+     * 命令行等短生命周期的进程应在退出前调用
+     */
+    public static synchronized void close() {
+        MappingJournal current = journal;
+        journal = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * 预热加密和解密路径：加载相关的类、查找SHA-256实现、建立查找表
+     * 只计算不写入映射存储，应在启动时的后台线程调用，使第一次加密不再承担这些开销
+     */
+    public static void warmUp() {
+        long start = System.nanoTime();
+        String key = "warmup";
+        boolean digestReady = true;
+        try {
+            parse(encodeMapped("只因你太美", key).message, key);
+        } catch (NoSuchAlgorithmException e) {
+            LOG.log(Level.WARNING, "预热失败", e);
+            digestReady = false;
+        }
+        parse(KunCodec.encode("只因你太美", key), key);
+        encryptionMap.stats();
+        if (digestReady && warmUpNanos == 0) {
+            warmUpNanos = Math.max(1, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return 第一次成功预热的耗时（纳秒），即没有预热时首次加密要承担的冷启动开销；尚未预热时为0
+     */
+    public static long warmUpNanos() {
+        return warmUpNanos;
+    }
+
+    /**
+     * 按指定版本加密文本
+     * @param originalContent 原始内容
+     * @param key 加密凭证
+     * @param version 编码版本，VERSION_MAPPED或VERSION_SELF_CONTAINED
+     * @return 加密后的内容
+     */
+    public static String encrypt(String originalContent, String key, int version) {
+        if (version == VERSION_SELF_CONTAINED) {
+            long start = System.nanoTime();
+            String result = KunCodec.encode(originalContent, key);
+            Metrics.recordEncrypt(start, originalContent.length());
+            Tracer.record(Tracer.EVENT_ENCRYPT, originalContent.length(), Tracer.RESULT_OK);
+            return result;
+        }
+        return encrypt(originalContent, key);
+    }
+
+    /**
+     * 加密文本
+     * @param originalContent 原始内容
+     * @param key 加密凭证
+     * @return 加密后的内容，格式为基于"只因你太美"五个字的加密文本，最后加上加密凭证
+     */
+    public static String encrypt(String originalContent, String key) {
+        long start = System.nanoTime();
+        try {
+            Encoded encoded = encodeMapped(originalContent, key);
+            
+            // 存储原始内容，用于后续解密
+            encryptionMap.put(encoded.lookupKey, originalContent);
+            MappingJournal currentJournal = journal;
+            if (currentJournal != null) {
+                currentJournal.append(encoded.lookupKey, originalContent);
+            }
+            
+            Metrics.recordEncrypt(start, originalContent.length());
+            Tracer.record(Tracer.EVENT_ENCRYPT, originalContent.length(), Tracer.RESULT_OK);
+            return encoded.message;
+        } catch (NoSuchAlgorithmException e) {
+            LOG.log(Level.SEVERE, "加密失败", e);
+            Tracer.record(Tracer.EVENT_ENCRYPT, originalContent.length(), Tracer.RESULT_FAILED);
+            return "加密失败：" + e.getMessage();
+        }
+    }
+
+    /**
+     * 批量加密，在多个核心上并行计算，结果顺序与输入一致
+     * 映射存储整批只写入一次
+     * @param originalContents 原始内容列表
+     * @param keys 与原始内容一一对应的加密凭证
+     * @param version 编码版本，VERSION_MAPPED或VERSION_SELF_CONTAINED
+     * @return 加密后的内容列表
+     */
+    public static List<String> encryptAll(List<String> originalContents, List<String> keys, int version) {
+        int count = checkBatch(originalContents, keys);
+        String[] results = new String[count];
+        if (version == VERSION_SELF_CONTAINED) {
+            IntStream.range(0, count).parallel().forEach(i -> {
+                long start = System.nanoTime();
+                results[i] = KunCodec.encode(originalContents.get(i), keys.get(i));
+                Metrics.recordEncrypt(start, originalContents.get(i).length());
+            });
+            Tracer.record(Tracer.EVENT_ENCRYPT_BATCH, count, Tracer.RESULT_OK);
+            return Arrays.asList(results);
+        }
+
+        String[] lookupKeys = new String[count];
+        IntStream.range(0, count).parallel().forEach(i -> {
+            long start = System.nanoTime();
+            try {
+                Encoded encoded = encodeMapped(originalContents.get(i), keys.get(i));
+                results[i] = encoded.message;
+                lookupKeys[i] = encoded.lookupKey;
+                // 与单条加密一致按每条计时；映射存储的写入整批一次，不计入单条延迟
+                Metrics.recordEncrypt(start, originalContents.get(i).length());
+            } catch (NoSuchAlgorithmException e) {
+                results[i] = "加密失败：" + e.getMessage();
+            }
+        });
+
+        encryptionMap.putAll(lookupKeys, originalContents);
+        MappingJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.appendAll(lookupKeys, originalContents);
+        }
+        Tracer.record(Tracer.EVENT_ENCRYPT_BATCH, count, Tracer.RESULT_OK);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 流式加密大文档（第一版编码）
+     * 原文按固定大小的块读取并逐块更新SHA-256摘要，峰值内存与原文大小无关；
+     * 映射中只保存原文来源，解密命中时再从来源读取；来源只保存在内存中，重启后无法解密
+     * @param reader 原文读取器，读取完毕后不会关闭
+     * @param key 加密凭证
+     * @param source 原文来源，用于解密时重新读取
+     * @return 加密后的内容
+     */
+    public static String encrypt(Reader reader, String key, PlaintextSource source) throws IOException {
+        return encrypt(reader, key, null, source);
+    }
+
+    /**
+     * 流式加密大文档（第一版编码），并把来源标识写入持久化日志
+     * 重启后由setSourceResolver设置的解析器按标识重新打开来源
+     * @param reader 原文读取器，读取完毕后不会关闭
+     * @param key 加密凭证
+     * @param sourceId 来源的标识（如URI），为null时不写入日志
+     * @param source 原文来源，用于解密时重新读取
+     * @return 加密后的内容
+     */
+    public static String encrypt(Reader reader, String key, String sourceId, PlaintextSource source)
+            throws IOException {
+        long start = System.nanoTime();
+        try {
+            MessageDigest digest = sha256();
+            CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer in = CharBuffer.allocate(STREAM_CHUNK_CHARS);
+            ByteBuffer out = ByteBuffer.allocate(STREAM_CHUNK_CHARS * 3);
+
+            int chars = 0;
+            int read;
+            while ((read = reader.read(in)) != -1) {
+                chars += read;
+                in.flip();
+                encodeChunk(encoder, in, out, digest, false);
+                in.compact();
+            }
+            // 凭证与原文经过同一个编码器，结果与对(原文 + 凭证)整体编码完全一致
+            int keyOffset = 0;
+            while (keyOffset < key.length()) {
+                int count = Math.min(in.remaining(), key.length() - keyOffset);
+                in.put(key, keyOffset, keyOffset + count);
+                keyOffset += count;
+                in.flip();
+                encodeChunk(encoder, in, out, digest, false);
+                in.compact();
+            }
+            in.flip();
+            encodeChunk(encoder, in, out, digest, true);
+            encoder.flush(out);
+            drain(out, digest);
+
+            Encoded encoded = formatMapped(digest.digest(), key);
+            encryptionMap.putReference(encoded.lookupKey, source);
+            MappingJournal currentJournal = journal;
+            if (currentJournal != null && sourceId != null) {
+                currentJournal.appendReference(encoded.lookupKey, sourceId);
+            }
+            Metrics.recordEncrypt(start, chars);
+            Tracer.record(Tracer.EVENT_ENCRYPT_SOURCE, chars, Tracer.RESULT_OK);
+            return encoded.message;
+        } catch (NoSuchAlgorithmException e) {
+            LOG.log(Level.SEVERE, "流式加密失败", e);
+            Tracer.record(Tracer.EVENT_ENCRYPT_SOURCE, 0, Tracer.RESULT_FAILED);
+            return "加密失败：" + e.getMessage();
+        }
+    }
+
+    private static void encodeChunk(CharsetEncoder encoder, CharBuffer in, ByteBuffer out,
+                                    MessageDigest digest, boolean endOfInput) {
+        while (true) {
+            CoderResult result = encoder.encode(in, out, endOfInput);
+            drain(out, digest);
+            if (!result.isOverflow()) {
+                return;
+            }
+        }
+    }
+
+    private static void drain(ByteBuffer out, MessageDigest digest) {
+        out.flip();
+        digest.update(out);
+        out.clear();
+    }
+
+    /**
+     * 第一版编码：只计算密文和查询键，不写入映射存储
+     * 摘要对象和缓冲区按线程复用
+     */
+    private static Encoded encodeMapped(String originalContent, String key) throws NoSuchAlgorithmException {
+        // 使用SHA-256哈希算法加密原文和凭证组合
+        MessageDigest digest = sha256();
+        byte[] encryptedHash = digest.digest((originalContent + key).getBytes(StandardCharsets.UTF_8));
+        return formatMapped(encryptedHash, key);
+    }
+
+    /**
+     * 由摘要生成第一版密文，不写入映射存储，供实时预览使用
+     * @param encryptedHash 原文和凭证组合的SHA-256摘要
+     * @param key 加密凭证
+     * @return 与encrypt结果相同的密文
+     */
+    static String formatMessage(byte[] encryptedHash, String key) {
+        return formatMapped(encryptedHash, key).message;
+    }
+
+    // 一次遍历直接从摘要字节生成密文和查询键，长度提前算好
+    private static Encoded formatMapped(byte[] encryptedHash, String key) {
+        int headerLength = MESSAGE_HEADER.length();
+        int keyLength = key.length();
+        char[] buffer = scratch(headerLength + MAPPED_BODY_LENGTH + 1 + keyLength);
+
+        MESSAGE_HEADER.getChars(0, headerLength, buffer, 0);
+        int position = headerLength;
+        for (int i = 0; i < MAPPED_DIGITS; i++) {
+            if (i > 0 && i % 5 == 0) {
+                buffer[position++] = ' ';
+            }
+            buffer[position++] = NIBBLE_TO_KUN[nibbleAt(encryptedHash, i)];
+        }
+        buffer[position++] = '，';
+        key.getChars(0, keyLength, buffer, position);
+        String message = new String(buffer, 0, position + keyLength);
+
+        // 查询键是去掉空白的编码部分加上凭证，复用同一个缓冲区
+        for (int i = 0; i < MAPPED_DIGITS; i++) {
+            buffer[i] = NIBBLE_TO_KUN[nibbleAt(encryptedHash, i)];
+        }
+        buffer[MAPPED_DIGITS] = ':';
+        key.getChars(0, keyLength, buffer, MAPPED_DIGITS + 1);
+        String lookupKey = new String(buffer, 0, MAPPED_DIGITS + 1 + keyLength);
+        return new Encoded(message, lookupKey);
+    }
+
+    // 第index个十六进制位，高半字节在前
+    private static int nibbleAt(byte[] hash, int index) {
+        int value = hash[index >> 1];
+        return (index & 1) == 0 ? (value >>> 4) & 0xf : value & 0xf;
+    }
+
+    private static char[] scratch(int length) {
+        char[] buffer = SCRATCH.get();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+            SCRATCH.set(buffer);
+        }
+        return buffer;
+    }
+
+    private static char[] buildNibbleTable() {
+        String hexDigits = "0123456789abcdef";
+        char[] table = new char[16];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = KUN_CHARS[(hexDigits.charAt(i) & 0x7) % 5].charAt(0);
+        }
+        return table;
+    }
+
+    private static MessageDigest sha256() throws NoSuchAlgorithmException {
+        MessageDigest digest = DIGEST.get();
+        if (digest == null) {
+            digest = MessageDigest.getInstance("SHA-256");
+            DIGEST.set(digest);
+        } else {
+            // 上一次使用可能因读取异常中途退出，先清掉残留的输入
+            digest.reset();
+        }
+        return digest;
+    }
+
+    /**
+     * 解密文本
+     * @param encryptedContent 加密内容
+     * @param key 加密凭证
+     * @return 解密后的原文
+     */
+    public static String decrypt(String encryptedContent, String key) {
+        long start = System.nanoTime();
+        try {
+            return decryptOne(encryptedContent, key);
+        } finally {
+            Metrics.DECRYPT.record(System.nanoTime() - start);
+        }
+    }
+
+    private static String decryptOne(String encryptedContent, String key) {
+        int length = encryptedContent.length();
+        Parsed parsed = parse(encryptedContent, key);
+        if (parsed.lookupKey == null) {
+            int result = Tracer.RESULT_OK;
+            if (parsed.rejected) {
+                Metrics.recordRejected();
+                result = Tracer.RESULT_REJECTED;
+            } else if (parsed == Parsed.FILTERED) {
+                Metrics.recordFiltered();
+                result = Tracer.RESULT_MISS;
+            }
+            Tracer.record(Tracer.EVENT_DECRYPT, length, result);
+            return parsed.result;
+        }
+        
+        String originalContent = resolve(encryptionMap.getValue(parsed.lookupKey));
+        boolean fromJournal = false;
+        if (originalContent == null) {
+            originalContent = loadFromJournal(parsed.lookupKey);
+            fromJournal = originalContent != null;
+        }
+        Metrics.recordLookup(originalContent != null, fromJournal);
+        if (originalContent != null) {
+            Tracer.record(Tracer.EVENT_DECRYPT, length,
+                    fromJournal ? Tracer.RESULT_JOURNAL_HIT : Tracer.RESULT_OK);
+            return originalContent;
+        }
+        // 通过了过滤器却没有找到，计为一次误判
+        Metrics.recordFalsePositive();
+        Tracer.record(Tracer.EVENT_DECRYPT, length, Tracer.RESULT_MISS);
+        
+        // 如果无法找到原始内容，返回默认消息
+        return NOT_FOUND;
+    }
+
+    /**
+     * 批量解密，并行解析，映射存储整批只查询一次，结果顺序与输入一致
+     * @param encryptedContents 加密内容列表
+     * @param keys 与加密内容一一对应的加密凭证
+     * @return 解密后的原文列表
+     */
+    public static List<String> decryptAll(List<String> encryptedContents, List<String> keys) {
+        int count = checkBatch(encryptedContents, keys);
+        Parsed[] parsed = new Parsed[count];
+        IntStream.range(0, count).parallel().forEach(i ->
+                parsed[i] = parse(encryptedContents.get(i), keys.get(i)));
+
+        String[] results = lookupAll(parsed, new boolean[count]);
+        Tracer.record(Tracer.EVENT_DECRYPT_BATCH, count, Tracer.RESULT_OK);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 解密文档中嵌入的所有坤曰密文，每条密文使用自带的凭证，其余文字原样保留
+     * 第一版密文的映射查询整批只进行一次，结果按原文顺序写入out
+     * @param document 包含密文的文档，如聊天记录导出；解析期间不能被修改
+     * @param out 输出目标，无法解密的密文原样写出
+     * @return 成功解密的密文数
+     */
+    public static int decryptDocument(CharSequence document, Appendable out) throws IOException {
+        List<MessageScanner.Match> matches = new ArrayList<>();
+        MessageScanner.findAll(document, matches);
+        int count = matches.size();
+        Parsed[] parsed = new Parsed[count];
+        IntStream.range(0, count).parallel().forEach(i -> {
+            MessageScanner.Match match = matches.get(i);
+            parsed[i] = parse(document, match, match.key(document).toString());
+        });
+        boolean[] decrypted = new boolean[count];
+        String[] results = lookupAll(parsed, decrypted);
+
+        int position = 0;
+        int success = 0;
+        for (int i = 0; i < count; i++) {
+            MessageScanner.Match match = matches.get(i);
+            out.append(document, position, match.start);
+            if (decrypted[i]) {
+                out.append(results[i]);
+                success++;
+            } else {
+                out.append(document, match.start, match.keyEnd);
+            }
+            position = match.keyEnd;
+        }
+        out.append(document, position, document.length());
+        Tracer.record(Tracer.EVENT_DECRYPT_DOCUMENT, count,
+                success == count ? Tracer.RESULT_OK : Tracer.RESULT_MISS);
+        return success;
+    }
+
+    /**
+     * 解密文档中嵌入的所有坤曰密文
+     * @param document 包含密文的文档
+     * @return 密文替换为原文后的文档
+     */
+    public static String decryptDocument(CharSequence document) {
+        StringBuilder builder = new StringBuilder(document.length());
+        try {
+            decryptDocument(document, builder);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return builder.toString();
+    }
+
+    // 第一版密文整批只查询一次映射存储，decrypted标记每条是否还原出了原文
+    private static String[] lookupAll(Parsed[] parsed, boolean[] decrypted) {
+        int count = parsed.length;
+        String[] lookupKeys = new String[count];
+        for (int i = 0; i < count; i++) {
+            lookupKeys[i] = parsed[i].lookupKey;
+        }
+        Object[] found = encryptionMap.getAll(lookupKeys);
+
+        String[] results = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (lookupKeys[i] == null) {
+                if (parsed[i].rejected) {
+                    Metrics.recordRejected();
+                } else if (parsed[i] == Parsed.FILTERED) {
+                    Metrics.recordFiltered();
+                } else {
+                    decrypted[i] = true;
+                }
+                results[i] = parsed[i].result;
+                continue;
+            }
+            String originalContent = found[i] != null ? resolve(found[i]) : loadFromJournal(lookupKeys[i]);
+            Metrics.recordLookup(originalContent != null, found[i] == null && originalContent != null);
+            if (originalContent == null) {
+                Metrics.recordFalsePositive();
+            }
+            decrypted[i] = originalContent != null;
+            results[i] = originalContent != null ? originalContent : NOT_FOUND;
+        }
+        return results;
+    }
+
+    /**
+     * 解析加密内容：第二版直接解码得到结果，第一版得到映射存储的查询键
+     */
+    private static Parsed parse(String encryptedContent, String key) {
+        // 提取加密部分和凭证
+        MessageScanner.Match match = new MessageScanner.Match();
+        if (!MessageScanner.find(encryptedContent, match)) {
+            return Parsed.rejected("无法解密：格式不正确");
+        }
+
+        // 验证凭证是否匹配
+        if (!match.keyEquals(encryptedContent, key)) {
+            return Parsed.rejected("无法解密：凭证不匹配");
+        }
+        return parse(encryptedContent, match, key);
+    }
+
+    // 解析已定位的密文，调用方已确认凭证一致
+    private static Parsed parse(CharSequence encryptedContent, MessageScanner.Match match, String key) {
+        // 第二版密文自带原文，直接解码
+        if (match.version == VERSION_SELF_CONTAINED) {
+            String originalContent = KunCodec.decode(encryptedContent, match.bodyStart, match.bodyEnd, key);
+            if (originalContent == null) {
+                return Parsed.rejected("无法解密：内容已损坏");
+            }
+            return new Parsed(originalContent, null, false);
+        }
+
+        // 先用布隆过滤器排除一定不存在的密文，不必拼接查询键
+        long high = Fingerprint.high(encryptedContent, match, key);
+        long low = Fingerprint.low(encryptedContent, match, key);
+        if (!mightContain(high, low)) {
+            return Parsed.FILTERED;
+        }
+
+        // 去掉空白后拼接查询键，长度提前算好
+        StringBuilder lookupKey = new StringBuilder(match.compactBodyLength + 1 + key.length());
+        match.appendCompactBody(encryptedContent, lookupKey);
+        lookupKey.append(':').append(key);
+        return new Parsed(null, lookupKey.toString(), false);
+    }
+
+    // 内存映射和磁盘日志的过滤器都排除时，查询一定不会命中
+    private static boolean mightContain(long high, long low) {
+        if (encryptionMap.mightContain(high, low)) {
+            return true;
+        }
+        MappingJournal currentJournal = journal;
+        return currentJournal != null && currentJournal.mightContain(high, low);
+    }
+
+    // 按引用保存的条目在命中时才从来源读取原文
+    private static String resolve(Object value) {
+        if (!(value instanceof PlaintextSource)) {
+            return (String) value;
+        }
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[STREAM_CHUNK_CHARS];
+        try (Reader reader = ((PlaintextSource) value).open()) {
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, count);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "读取原文来源失败", e);
+            return "无法解密：原文来源已无法读取（" + e.getMessage() + "）";
+        }
+        return builder.toString();
+    }
+
+    // 内存中没有时从磁盘日志读取，并放回内存映射；按引用保存的条目通过解析器重新打开来源
+    private static String loadFromJournal(String lookupKey) {
+        MappingJournal currentJournal = journal;
+        if (currentJournal == null) {
+            return null;
+        }
+        String originalContent = currentJournal.get(lookupKey);
+        if (originalContent != null) {
+            encryptionMap.put(lookupKey, originalContent);
+            return originalContent;
+        }
+        PlaintextSource.Resolver resolver = sourceResolver;
+        String sourceId = resolver != null ? currentJournal.getReference(lookupKey) : null;
+        PlaintextSource source = sourceId != null ? resolver.resolve(sourceId) : null;
+        if (source == null) {
+            return null;
+        }
+        encryptionMap.putReference(lookupKey, source);
+        return resolve(source);
+    }
+
+    private static int checkBatch(List<String> contents, List<String> keys) {
+        if (contents.size() != keys.size()) {
+            throw new IllegalArgumentException("内容与凭证数量不一致");
+        }
+        return contents.size();
+    }
+
+    private static final class Encoded {
+        final String message;
+        final String lookupKey;
+
+        Encoded(String message, String lookupKey) {
+            this.message = message;
+            this.lookupKey = lookupKey;
+        }
+    }
+
+    private static final class Parsed {
+        // 被过滤器排除的第一版密文，共用一个实例
+        static final Parsed FILTERED = new Parsed(NOT_FOUND, null, false);
+
+        // 已确定的结果（第二版原文或错误信息）
+        final String result;
+        // 第一版的映射存储查询键
+        final String lookupKey;
+        // 格式、凭证或内容校验未通过
+        final boolean rejected;
+
+        Parsed(String result, String lookupKey, boolean rejected) {
+            this.result = result;
+            this.lookupKey = lookupKey;
+            this.rejected = rejected;
+        }
+
+        static Parsed rejected(String message) {
+            return new Parsed(message, null, true);
+        }
+    }
+
+    /**
+     * 从加密文本中提取加密凭证
+     * @param encryptedContent 加密内容
+     * @return 加密凭证，如果格式不匹配则返回null
+     */
+    public static String extractKey(String encryptedContent) {
+        long start = System.nanoTime();
+        MessageScanner.Match match = new MessageScanner.Match();
+        String key = null;
+        if (MessageScanner.find(encryptedContent, match)) {
+            key = encryptedContent.substring(match.keyStart, match.keyEnd);
+        }
+        Metrics.EXTRACT_KEY.record(System.nanoTime() - start);
+        Tracer.record(Tracer.EVENT_EXTRACT_KEY, encryptedContent.length(),
+                key != null ? Tracer.RESULT_OK : Tracer.RESULT_REJECTED);
+        return key;
+    }
+
+    /**
+     * 调整内存映射存储的限额，已有的内存映射会被丢弃（磁盘日志不受影响）
+     * @param maxEntries 最大条目数
+     * @param maxBytes 原文总字节数上限
+     * @param ttlMillis 每条目存活时间，小于等于0表示永不过期
+     */
+    public static void configureStore(int maxEntries, long maxBytes, long ttlMillis) {
+        encryptionMap = new MappingStore(maxEntries, maxBytes, ttlMillis);
+    }
+
+    /**
+     * 系统内存紧张时收缩映射存储
+     * @param level ComponentCallbacks2.onTrimMemory传入的级别
+     */
+    public static void onTrimMemory(int level) {
+        encryptionMap.trimMemory(level);
+    }
+
+    /**
+     * @return 映射存储的当前状态
+     */
+    public static MappingStore.Stats getStoreStats() {
+        return encryptionMap.stats();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.kun_said.util;
+
+/**
+ * 查询键的128位指纹
+ * 由两个独立的64位哈希组成，100万条目时发生碰撞的概率约为1e-27
+ */
+final class Fingerprint {
+    private static final long HIGH_SEED = 0x9E3779B97F4A7C15L;
+    private static final long HIGH_MULTIPLIER = 0xFF51AFD7ED558CCDL;
+    private static final long LOW_SEED = 0xC2B2AE3D27D4EB4FL;
+    private static final long LOW_MULTIPLIER = 0xC4CEB9FE1A85EC53L;
+
+    private Fingerprint() {
+    }
+
+    static long high(CharSequence key) {
+        return hash(key, HIGH_SEED, HIGH_MULTIPLIER);
+    }
+
+    static long low(CharSequence key) {
+        return hash(key, LOW_SEED, LOW_MULTIPLIER);
+    }
+
+    /**
+     * 第一版密文查询键的指纹，与对"去掉空白的加密部分:凭证"调用high的结果相同，但不拼接字符串
+     */
+    static long high(CharSequence text, MessageScanner.Match match, String key) {
+        return hash(text, match, key, HIGH_SEED, HIGH_MULTIPLIER);
+    }
+
+    static long low(CharSequence text, MessageScanner.Match match, String key) {
+        return hash(text, match, key, LOW_SEED, LOW_MULTIPLIER);
+    }
+
+    private static long hash(CharSequence key, long seed, long multiplier) {
+        int length = key.length();
+        long h = seed ^ length;
+        for (int i = 0; i < length; i++) {
+            h = step(h, key.charAt(i), multiplier);
+        }
+        return finish(h);
+    }
+
+    private static long hash(CharSequence text, MessageScanner.Match match, String key,
+                             long seed, long multiplier) {
+        int keyLength = key.length();
+        long h = seed ^ (match.compactBodyLength + 1 + keyLength);
+        for (int i = match.bodyStart; i < match.bodyEnd; i++) {
+            char c = text.charAt(i);
+            if (!MessageScanner.isRegexWhitespace(c)) {
+                h = step(h, c, multiplier);
+            }
+        }
+        h = step(h, ':', multiplier);
+        for (int i = 0; i < keyLength; i++) {
+            h = step(h, key.charAt(i), multiplier);
+        }
+        return finish(h);
+    }
+
+    private static long step(long h, char c, long multiplier) {
+        h = (h ^ c) * multiplier;
+        return h ^ (h >>> 29);
+    }
+
+    // MurmurHash3的64位收尾混合，使低位也足够均匀，可直接用作表下标
+    private static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
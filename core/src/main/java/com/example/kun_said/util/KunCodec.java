@@ -0,0 +1,181 @@
+package com.example.kun_said.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * 自包含的坤曰编码（第二版）
+ * 密文本身携带原文：原文UTF-8字节前加4字节CRC32校验，与凭证派生的密钥流异或后，
+ * 每个字节写成4位"只因你太美"五进制数字。解密只需一次线性扫描，不依赖映射存储。
+ */
+public final class KunCodec {
+    // 第二版的前缀，与第一版"坤曰："区分，旧版本不会误认
+    public static final String HEADER = "坤曰二：只因你太美，你我美积极，";
+
+    private static final char[] DIGITS = {'只', '因', '你', '太', '美'};
+    static final int DIGITS_PER_BYTE = 4; // 5^4 = 625 >= 256
+    static final int CHECK_SIZE = 4;
+    private static final int BLOCK_SIZE = 32;
+
+    // 每个线程复用自己的摘要对象，批量编码时不必每条都查找一次SHA-256实现
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private KunCodec() {
+    }
+
+    /**
+     * 编码原文
+     * @param originalContent 原始内容
+     * @param key 加密凭证
+     * @return 完整的第二版加密文本
+     */
+    public static String encode(String originalContent, String key) {
+        byte[] plain = originalContent.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(plain);
+        int check = (int) crc.getValue();
+
+        byte[] payload = new byte[CHECK_SIZE + plain.length];
+        payload[0] = (byte) (check >>> 24);
+        payload[1] = (byte) (check >>> 16);
+        payload[2] = (byte) (check >>> 8);
+        payload[3] = (byte) check;
+        System.arraycopy(plain, 0, payload, CHECK_SIZE, plain.length);
+        new KeyStream(key).apply(payload, payload.length);
+
+        // 每5个数字一组，组间一个空格，长度可以提前算出
+        int digits = payload.length * DIGITS_PER_BYTE;
+        int bodyLength = digits + (digits - 1) / 5;
+        StringBuilder result = new StringBuilder(HEADER.length() + bodyLength + 1 + key.length());
+        result.append(HEADER);
+        int written = 0;
+        for (byte b : payload) {
+            int value = b & 0xff;
+            for (int divisor = 125; divisor > 0; divisor /= 5) {
+                if (written > 0 && written % 5 == 0) {
+                    result.append(' ');
+                }
+                result.append(DIGITS[(value / divisor) % 5]);
+                written++;
+            }
+        }
+        result.append('，').append(key);
+        return result.toString();
+    }
+
+    /**
+     * 解码密文主体
+     * @param body 包含密文主体的文本
+     * @param start 主体起始位置（含）
+     * @param end 主体结束位置（不含）
+     * @param key 加密凭证
+     * @return 原始内容，主体损坏或校验失败时返回null
+     */
+    public static String decode(CharSequence body, int start, int end, String key) {
+        byte[] payload = new byte[(end - start) / DIGITS_PER_BYTE];
+        int length = 0;
+        int value = 0;
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            char c = body.charAt(i);
+            int digit = digitOf(c);
+            if (digit < 0) {
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                return null;
+            }
+            value = value * 5 + digit;
+            if (++count == DIGITS_PER_BYTE) {
+                if (value > 0xff) {
+                    return null;
+                }
+                payload[length++] = (byte) value;
+                value = 0;
+                count = 0;
+            }
+        }
+        if (count != 0 || length < CHECK_SIZE) {
+            return null;
+        }
+
+        new KeyStream(key).apply(payload, length);
+        int check = ((payload[0] & 0xff) << 24) | ((payload[1] & 0xff) << 16)
+                | ((payload[2] & 0xff) << 8) | (payload[3] & 0xff);
+        CRC32 crc = new CRC32();
+        crc.update(payload, CHECK_SIZE, length - CHECK_SIZE);
+        if ((int) crc.getValue() != check) {
+            return null;
+        }
+        return new String(payload, CHECK_SIZE, length - CHECK_SIZE, StandardCharsets.UTF_8);
+    }
+
+    // "只因你太美"对应的五进制数字，其他字符返回-1
+    static int digitOf(char c) {
+        switch (c) {
+            case '只':
+                return 0;
+            case '因':
+                return 1;
+            case '你':
+                return 2;
+            case '太':
+                return 3;
+            case '美':
+                return 4;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * 计数器模式的密钥流：第i块为SHA-256(凭证 || i)
+     */
+    private static final class KeyStream {
+        private final MessageDigest digest;
+        private final byte[] keyBytes;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] counter = new byte[4];
+
+        KeyStream(String key) {
+            digest = DIGEST.get();
+            // 上一次使用可能因异常中途退出，先清掉残留的输入
+            digest.reset();
+            keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        }
+
+        void apply(byte[] data, int length) {
+            int index = 0;
+            for (int offset = 0; offset < length; offset += BLOCK_SIZE) {
+                counter[0] = (byte) (index >>> 24);
+                counter[1] = (byte) (index >>> 16);
+                counter[2] = (byte) (index >>> 8);
+                counter[3] = (byte) index;
+                index++;
+                digest.update(keyBytes);
+                digest.update(counter);
+                try {
+                    digest.digest(block, 0, BLOCK_SIZE);
+                } catch (DigestException e) {
+                    throw new IllegalStateException(e);
+                }
+                int limit = Math.min(BLOCK_SIZE, length - offset);
+                for (int i = 0; i < limit; i++) {
+                    data[offset + i] ^= block[i];
+                }
+            }
+        }
+    }
+}
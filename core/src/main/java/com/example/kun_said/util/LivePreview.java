@@ -0,0 +1,113 @@
+package com.example.kun_said.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+
+/**
+ * 边输入边预览的密文计算
+ * 第一版密文是SHA-256(原文 + 凭证)，凭证总在最后，所以原文前缀的摘要中间状态可以缓存：
+ * 在末尾追加文字时只对新增字符求摘要，再克隆一份中间状态补上凭证即可得到密文。
+ * 每隔固定字符数保存一个检查点，删除或修改末尾附近的文字时从最近的检查点重新计算。
+ * 预览只计算密文，不写入映射存储，也不写日志；真正的写入只在点击加密时发生。
+ * 不是线程安全的，应在同一个后台线程上调用。
+ */
+public final class LivePreview {
+    // 相邻检查点之间的字符数
+    private static final int CHECKPOINT_CHARS = 4096;
+
+    // checkpoints[i]是前checkpointLengths[i]个字符的摘要状态，第0个对应空前缀
+    private final ArrayList<MessageDigest> checkpoints = new ArrayList<>();
+    private final ArrayList<Integer> checkpointLengths = new ArrayList<>();
+    // 上一次预览的原文，digest中已经包含它的前hashedLength个字符
+    private String cached = "";
+    private int hashedLength;
+    private MessageDigest digest;
+
+    /**
+     * 计算预览密文
+     * @param originalContent 原始内容
+     * @param key 加密凭证
+     * @param version 编码版本，VERSION_MAPPED或VERSION_SELF_CONTAINED
+     * @return 与点击加密后得到的密文相同
+     */
+    public String preview(String originalContent, String key, int version) {
+        if (version == EncryptionUtil.VERSION_SELF_CONTAINED) {
+            // 第二版密文依赖全文的校验和与密钥流，无法增量计算，本身也是线性的
+            return KunCodec.encode(originalContent, key);
+        }
+        try {
+            rewind(originalContent);
+            // 已求摘要的前缀不能以高位代理结尾，否则后面补上的低位代理会被单独编码
+            int stable = originalContent.length();
+            while (stable > hashedLength && Character.isHighSurrogate(originalContent.charAt(stable - 1))) {
+                stable--;
+            }
+            advance(originalContent, stable);
+            cached = originalContent;
+
+            MessageDigest copy = (MessageDigest) digest.clone();
+            copy.update((originalContent.substring(hashedLength) + key).getBytes(StandardCharsets.UTF_8));
+            return EncryptionUtil.formatMessage(copy.digest(), key);
+        } catch (CloneNotSupportedException | NoSuchAlgorithmException e) {
+            reset();
+            return "加密失败：" + e.getMessage();
+        }
+    }
+
+    /**
+     * 丢弃缓存的摘要状态
+     */
+    public void reset() {
+        checkpoints.clear();
+        checkpointLengths.clear();
+        cached = "";
+        hashedLength = 0;
+        digest = null;
+    }
+
+    // 回退到与新原文公共前缀之内的最后一个检查点
+    private void rewind(String originalContent) throws CloneNotSupportedException, NoSuchAlgorithmException {
+        if (digest == null) {
+            reset();
+            digest = MessageDigest.getInstance("SHA-256");
+            checkpoints.add((MessageDigest) digest.clone());
+            checkpointLengths.add(0);
+            return;
+        }
+        int limit = Math.min(hashedLength, originalContent.length());
+        int common = 0;
+        while (common < limit && originalContent.charAt(common) == cached.charAt(common)) {
+            common++;
+        }
+        if (common == hashedLength) {
+            return;
+        }
+        int index = checkpointLengths.size() - 1;
+        while (checkpointLengths.get(index) > common) {
+            checkpoints.remove(index);
+            checkpointLengths.remove(index);
+            index--;
+        }
+        digest = (MessageDigest) checkpoints.get(index).clone();
+        hashedLength = checkpointLengths.get(index);
+    }
+
+    // 把[hashedLength, end)范围的字符加入摘要，经过检查点位置时保存状态，end之前不能是高位代理
+    private void advance(String originalContent, int end) throws CloneNotSupportedException {
+        while (hashedLength < end) {
+            int last = checkpointLengths.get(checkpointLengths.size() - 1);
+            int boundary = Math.min(end, last + CHECKPOINT_CHARS);
+            while (boundary < end && Character.isHighSurrogate(originalContent.charAt(boundary - 1))) {
+                boundary++;
+            }
+            digest.update(originalContent.substring(hashedLength, boundary).getBytes(StandardCharsets.UTF_8));
+            hashedLength = boundary;
+            if (boundary - last >= CHECKPOINT_CHARS) {
+                checkpoints.add((MessageDigest) digest.clone());
+                checkpointLengths.add(boundary);
+            }
+        }
+    }
+}
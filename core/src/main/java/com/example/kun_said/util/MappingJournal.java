@@ -0,0 +1,544 @@
+package com.example.kun_said.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * 加密映射日志
+ * 只追加写入的磁盘文件，进程重启后仍可解密。启动时只加载键到文件偏移的索引，
+ * 原文在查询命中时才从内存映射中读取。写入由后台线程批量完成，每批只同步一次磁盘。
+ * 写文件、同步磁盘和压缩复制都不持有锁，查询只在索引更新和切换文件的短暂期间等待。
+ * 写线程因IO错误退出后日志即关闭，之后的写入被丢弃，查询一律返回null。
+ *
+ * 记录格式：魔数(4) 类型(1) 键长度(4) 值长度(4) CRC32(4) 键 值
+ * 按引用保存的映射只记录原文来源的标识，原文本身不写入日志。
+ */
+public class MappingJournal {
+    // 使用java.util.logging，在Android上会转发到logcat
+    private static final Logger LOG = Logger.getLogger("MappingJournal");
+
+    private static final int MAGIC = 0x4B554E31; // "KUN1"
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+    private static final byte TYPE_REFERENCE = 3;
+    private static final int HEADER_SIZE = 17;
+
+    // 每批最多合并写入的记录数
+    private static final int MAX_BATCH = 256;
+    // 失效数据超过1MB且多于有效数据时触发压缩
+    private static final long COMPACT_MIN_DEAD_BYTES = 1024 * 1024;
+    // 过滤器的初始容量，索引超过容量时按两倍重建
+    private static final int INITIAL_FILTER_ENTRIES = 1024;
+
+    private final File file;
+    private final long maxLiveBytes;
+    private final LinkedBlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    // 已提交但尚未写入磁盘的记录，保证写入期间也能查到
+    private final ConcurrentHashMap<String, Record> pending = new ConcurrentHashMap<>();
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private final Thread writer;
+
+    // 以下字段由this保护；索引按写入顺序排列，最早的记录在前
+    // 只有写线程修改这些字段，写线程自己读取时不加锁
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>();
+    // 索引中查询键的计数布隆过滤器，读取时不加锁
+    private volatile CountingBloomFilter filter = new CountingBloomFilter(INITIAL_FILTER_ENTRIES);
+    private int filterCapacity = INITIAL_FILTER_ENTRIES;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long writePosition;
+    private long liveBytes;
+    private long deadBytes;
+    private volatile boolean closed;
+
+    private static final Record SHUTDOWN = new Record(TYPE_REMOVE, "", null);
+
+    private static final class Record {
+        final byte type;
+        final String key;
+        final String value;
+
+        Record(byte type, String key, String value) {
+            this.type = type;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 打开日志文件，恢复工作在后台写线程中完成
+     * @param file 日志文件
+     * @param maxLiveBytes 有效记录总字节数上限，超出后最早的记录会被淘汰
+     */
+    public MappingJournal(File file, long maxLiveBytes) {
+        this.file = file;
+        this.maxLiveBytes = maxLiveBytes;
+        this.writer = new Thread(this::runWriter, "kun-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * 追加一条映射，立即返回，不等待磁盘写入
+     */
+    public void append(String key, String value) {
+        if (closed) {
+            return;
+        }
+        submit(new Record(TYPE_PUT, key, value));
+    }
+
+    /**
+     * 追加一条按引用保存的映射，立即返回，不等待磁盘写入
+     * @param sourceId 原文来源的标识，如文件的URI
+     */
+    public void appendReference(String key, String sourceId) {
+        if (closed) {
+            return;
+        }
+        submit(new Record(TYPE_REFERENCE, key, sourceId));
+    }
+
+    /**
+     * 批量追加映射，跳过查询键为null的位置
+     */
+    public void appendAll(String[] keys, List<String> values) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                append(keys[i], values.get(i));
+            }
+        }
+    }
+
+    /**
+     * 删除一条映射，立即返回，不等待磁盘写入
+     */
+    public void remove(String key) {
+        if (closed) {
+            return;
+        }
+        submit(new Record(TYPE_REMOVE, key, null));
+    }
+
+    private void submit(Record record) {
+        pending.put(record.key, record);
+        queue.offer(record);
+        if (closed) {
+            // 与关闭同时提交的记录可能不会再被写入，不能一直留在pending中
+            pending.remove(record.key, record);
+        }
+    }
+
+    /**
+     * 查询映射，命中时才从内存映射中读取原文
+     * @param key 查询键
+     * @return 原始内容，不存在或按引用保存时返回null
+     */
+    public String get(String key) {
+        return read(key, TYPE_PUT);
+    }
+
+    /**
+     * 查询按引用保存的映射
+     * @param key 查询键
+     * @return 原文来源的标识，不存在或不是按引用保存时返回null
+     */
+    public String getReference(String key) {
+        return read(key, TYPE_REFERENCE);
+    }
+
+    private String read(String key, byte type) {
+        Record record = pending.get(key);
+        if (record != null) {
+            return record.type == type ? record.value : null;
+        }
+        if (!awaitReady()) {
+            return null;
+        }
+        synchronized (this) {
+            Long offset = index.get(key);
+            if (offset == null || mapped == null) {
+                return null;
+            }
+            try {
+                remapIfNeeded(offset + HEADER_SIZE);
+                if (mapped.get((int) (offset + 4)) != type) {
+                    return null;
+                }
+                return readValue(offset);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "读取映射失败", e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 不加锁地判断指纹是否可能存在，不等待恢复完成
+     * @return 为false时get一定返回null；恢复尚未完成或有待写记录时保守地返回true
+     */
+    boolean mightContain(long high, long low) {
+        if (closed && !writer.isAlive()) {
+            return false;
+        }
+        if (ready.getCount() != 0 || !pending.isEmpty()) {
+            return true;
+        }
+        return filter.mightContain(high, low);
+    }
+
+    /**
+     * @return 日志中的有效映射数量
+     */
+    public int size() {
+        awaitReady();
+        synchronized (this) {
+            return index.size();
+        }
+    }
+
+    /**
+     * 写入所有待写记录并关闭文件
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.offer(SHUTDOWN);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean awaitReady() {
+        try {
+            return ready.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void runWriter() {
+        try {
+            recover();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "恢复映射日志失败", e);
+            closed = true;
+            ready.countDown();
+            return;
+        }
+        ready.countDown();
+
+        List<Record> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                boolean shutdown = writeBatch(batch);
+                batch.clear();
+                if (shutdown) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "写入映射日志失败，日志已关闭", e);
+        } finally {
+            closed = true;
+            synchronized (this) {
+                closeChannel();
+            }
+            // 写线程退出后不会再有记录落盘，丢弃积压的记录，避免队列无限增长
+            queue.clear();
+            pending.clear();
+        }
+    }
+
+    // 一批记录只调用一次force，把磁盘同步的开销分摊到整批
+    // 写入和同步期间记录仍在pending中可以查到，同步完成后才加锁更新索引
+    private boolean writeBatch(List<Record> batch) throws IOException {
+        boolean shutdown = false;
+        int[] lengths = new int[batch.size()];
+        long position = writePosition;
+        for (int i = 0; i < lengths.length; i++) {
+            Record record = batch.get(i);
+            if (record == SHUTDOWN) {
+                shutdown = true;
+                continue;
+            }
+            lengths[i] = writeRecord(record, position);
+            position += lengths[i];
+        }
+        channel.force(false);
+        synchronized (this) {
+            for (int i = 0; i < lengths.length; i++) {
+                Record record = batch.get(i);
+                if (record == SHUTDOWN) {
+                    continue;
+                }
+                applyRecord(record.type, record.key, writePosition, lengths[i]);
+                writePosition += lengths[i];
+                pending.remove(record.key, record);
+            }
+            evictOverflow();
+        }
+        if (deadBytes > COMPACT_MIN_DEAD_BYTES && deadBytes > liveBytes) {
+            compact();
+        }
+        return shutdown;
+    }
+
+    private int writeRecord(Record record, long offset) throws IOException {
+        ByteBuffer buffer = encode(record);
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+        return length;
+    }
+
+    private static ByteBuffer encode(Record record) {
+        // 与映射存储相同的编码，不成对的代理字符重启后也能原样读回
+        byte[] keyBytes = MappingStore.encodeUtf8(record.key);
+        byte[] valueBytes = record.value == null
+                ? new byte[0] : MappingStore.encodeUtf8(record.value);
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(valueBytes);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length + valueBytes.length);
+        buffer.putInt(MAGIC)
+                .put(record.type)
+                .putInt(keyBytes.length)
+                .putInt(valueBytes.length)
+                .putInt((int) crc.getValue())
+                .put(keyBytes)
+                .put(valueBytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    // 调用方需持有锁
+    private void applyRecord(byte type, String key, long offset, long length) {
+        Long previous = index.remove(key);
+        if (previous != null) {
+            long previousLength = recordLength(previous);
+            liveBytes -= previousLength;
+            deadBytes += previousLength;
+        }
+        if (type != TYPE_REMOVE) {
+            index.put(key, offset);
+            liveBytes += length;
+            if (previous == null) {
+                addToFilter(key);
+            }
+        } else {
+            // 删除记录本身在下次压缩时即可丢弃
+            deadBytes += length;
+            if (previous != null) {
+                filter.remove(Fingerprint.high(key), Fingerprint.low(key));
+            }
+        }
+    }
+
+    // 调用方需持有锁；待写记录在写入索引后才从pending中移除，读取方因此不会漏看刚加入的键
+    private void addToFilter(String key) {
+        if (index.size() > filterCapacity) {
+            filterCapacity *= 2;
+            CountingBloomFilter rebuilt = new CountingBloomFilter(filterCapacity);
+            for (String existing : index.keySet()) {
+                rebuilt.add(Fingerprint.high(existing), Fingerprint.low(existing));
+            }
+            filter = rebuilt;
+        } else {
+            filter.add(Fingerprint.high(key), Fingerprint.low(key));
+        }
+    }
+
+    /**
+     * 启动时扫描日志，只建立索引并校验CRC，遇到损坏或不完整的尾部记录时截断
+     */
+    private synchronized void recover() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("无法创建目录: " + parent);
+        }
+        openChannel();
+        long size = channel.size();
+        long position = 0;
+        CRC32 crc = new CRC32();
+        while (position + HEADER_SIZE <= size) {
+            ByteBuffer header = mapped.duplicate();
+            header.position((int) position);
+            if (header.getInt() != MAGIC) {
+                break;
+            }
+            byte type = header.get();
+            int keyLength = header.getInt();
+            int valueLength = header.getInt();
+            int expectedCrc = header.getInt();
+            long end = position + HEADER_SIZE + (long) keyLength + valueLength;
+            if (keyLength < 0 || valueLength < 0 || end > size
+                    || (type != TYPE_PUT && type != TYPE_REMOVE && type != TYPE_REFERENCE)) {
+                break;
+            }
+            ByteBuffer body = mapped.duplicate();
+            body.position((int) (position + HEADER_SIZE));
+            body.limit((int) end);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            ByteBuffer keyBuffer = mapped.duplicate();
+            keyBuffer.position((int) (position + HEADER_SIZE));
+            keyBuffer.get(keyBytes);
+            applyRecord(type, MappingStore.decodeUtf8(keyBytes, 0, keyBytes.length), position, end - position);
+            position = end;
+        }
+        if (position < size) {
+            LOG.warning("丢弃日志尾部的不完整记录: " + (size - position) + "字节");
+            channel.truncate(position);
+            channel.force(true);
+        }
+        writePosition = position;
+        Tracer.record(Tracer.EVENT_JOURNAL_RECOVER, index.size(), Tracer.RESULT_OK);
+    }
+
+    // 超出容量时淘汰最早写入的记录，重启后在压缩前可能重新出现，不影响正确性
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Long>> iterator = index.entrySet().iterator();
+        while (liveBytes > maxLiveBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            long length = recordLength(eldest.getValue());
+            filter.remove(Fingerprint.high(eldest.getKey()), Fingerprint.low(eldest.getKey()));
+            iterator.remove();
+            liveBytes -= length;
+            deadBytes += length;
+        }
+    }
+
+    /**
+     * 把有效记录复制到新文件后原子替换，回收被覆盖、删除和淘汰的记录
+     * 复制在锁外进行：只有写线程修改索引，复制期间查询仍读取旧文件，替换时才加锁
+     */
+    private void compact() throws IOException {
+        File compacted = new File(file.getPath() + ".compact");
+        LinkedHashMap<String, Long> newIndex = new LinkedHashMap<>();
+        long position = 0;
+        ByteBuffer snapshot;
+        synchronized (this) {
+            remapIfNeeded(writePosition);
+            snapshot = mapped;
+        }
+        try (RandomAccessFile out = new RandomAccessFile(compacted, "rw")) {
+            FileChannel target = out.getChannel();
+            target.truncate(0);
+            for (Map.Entry<String, Long> entry : index.entrySet()) {
+                long offset = entry.getValue();
+                int length = HEADER_SIZE + snapshot.getInt((int) offset + 5) + snapshot.getInt((int) offset + 9);
+                ByteBuffer source = snapshot.duplicate();
+                source.position((int) offset);
+                source.limit((int) offset + length);
+                long writeAt = position;
+                while (source.hasRemaining()) {
+                    writeAt += target.write(source, writeAt);
+                }
+                newIndex.put(entry.getKey(), position);
+                position += length;
+            }
+            target.force(true);
+        }
+        synchronized (this) {
+            closeChannel();
+            if (!compacted.renameTo(file)) {
+                throw new IOException("无法替换映射日志: " + file);
+            }
+            index.clear();
+            index.putAll(newIndex);
+            liveBytes = position;
+            deadBytes = 0;
+            openChannel();
+            writePosition = position;
+        }
+        Tracer.record(Tracer.EVENT_JOURNAL_COMPACT, index.size(), Tracer.RESULT_OK);
+    }
+
+    private void openChannel() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        mapped = null;
+        remapIfNeeded(channel.size());
+    }
+
+    private void closeChannel() {
+        mapped = null;
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "关闭映射日志失败", e);
+            }
+            raf = null;
+            channel = null;
+        }
+    }
+
+    // 调用方需持有锁；映射只读，文件增长后重新映射
+    private void remapIfNeeded(long end) throws IOException {
+        if (mapped != null && mapped.capacity() >= end) {
+            return;
+        }
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("映射日志过大: " + size);
+        }
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    private long recordLength(long offset) {
+        try {
+            remapIfNeeded(offset + HEADER_SIZE);
+        } catch (IOException e) {
+            return 0;
+        }
+        int keyLength = mapped.getInt((int) offset + 5);
+        int valueLength = mapped.getInt((int) offset + 9);
+        return HEADER_SIZE + (long) keyLength + valueLength;
+    }
+
+    private String readValue(long offset) throws IOException {
+        remapIfNeeded(offset + HEADER_SIZE);
+        int keyLength = mapped.getInt((int) offset + 5);
+        int valueLength = mapped.getInt((int) offset + 9);
+        int valueStart = (int) offset + HEADER_SIZE + keyLength;
+        remapIfNeeded((long) valueStart + valueLength);
+        byte[] value = new byte[valueLength];
+        ByteBuffer source = mapped.duplicate();
+        source.position(valueStart);
+        source.get(value);
+        return MappingStore.decodeUtf8(value, 0, value.length);
+    }
+}
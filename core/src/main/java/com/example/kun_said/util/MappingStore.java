@@ -0,0 +1,987 @@
+package com.example.kun_said.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 加密映射存储
+ * 线程安全，按条目数和原文总字节数双重限额，超出后按LRU顺序淘汰，可选每条目过期时间。
+ * 查询键不保存原串，只以128位指纹存入开放寻址表；条目的各字段放在基本类型的平行数组中，
+ * 原文以UTF-8写入一块连续的字节区，不成对的代理字符按其码位编成三个字节，读取时原样还原。
+ * 每条目的固定开销约50字节，且不产生需要GC逐个追踪的对象。
+ * 原文按内容去重：相同原文以自身的128位指纹为键只保存一份并计数引用，同一条消息用N个凭证加密时
+ * 只占用一份原文加N个条目，最后一个引用被删除时原文才释放。
+ * 超过阈值的长原文先按原样写入，再由后台线程压缩后原地替换，写入方不承担压缩开销；
+ * 只有查询命中时才解压，且解压在锁外进行。字节数限额按去重和压缩后的实际字节计算。
+ * 另外维护一个计数布隆过滤器，随写入和淘汰增量更新，确定不存在的查询可以不加锁直接排除。
+ */
+public class MappingStore {
+    // 系统内存紧张时的回收级别（与ComponentCallbacks2中的常量保持一致）
+    public static final int TRIM_MEMORY_RUNNING_LOW = 10;
+    public static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+    public static final int TRIM_MEMORY_UI_HIDDEN = 20;
+    public static final int TRIM_MEMORY_BACKGROUND = 40;
+    public static final int TRIM_MEMORY_COMPLETE = 80;
+
+    // 按引用保存的条目只计入固定开销，原文不在内存中
+    private static final long REFERENCE_BYTES = 64;
+
+    private static final int NONE = -1;
+    // entryPayloads中表示该条目按引用保存，NONE表示尚未设置原文
+    private static final int REFERENCE = -2;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int INITIAL_ARENA_BYTES = 4096;
+    // 字节区按int寻址，单条原文和全部原文合计都不能超过该值
+    private static final int MAX_ARENA_BYTES = Integer.MAX_VALUE - 8;
+    // UTF-8字节数达到该值的原文才压缩，短原文保持原样以便快速读取
+    private static final int COMPRESS_THRESHOLD_BYTES = 1024;
+
+    // 所有存储共用的后台压缩线程，空闲一段时间后退出
+    private static final ThreadPoolExecutor BACKGROUND_COMPRESSOR = createCompressor();
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final Executor compressor;
+    // 过期时间使用的时钟，单位毫秒
+    private final LongSupplier clock;
+
+    // 以下字段由this保护
+    // 按条目编号索引的平行数组：查询键指纹、原文编号、过期时间和LRU双向链表
+    private long[] fingerprintHigh;
+    private long[] fingerprintLow;
+    private int[] entryPayloads;
+    private long[] expiresAt;
+    private int[] previous;
+    private int[] next;
+    // head为最久未使用的条目，tail为最近使用的条目；空闲编号通过next串成链表
+    private int head;
+    private int tail;
+    private int freeList;
+    private int allocated;
+    private int size;
+
+    // 线性探测的开放寻址表，保存条目编号+1，0为空槽，负载不超过一半
+    private int[] slots;
+
+    // 按原文编号索引的平行数组：原文内容的指纹、在字节区中的位置、引用计数和未压缩时的字节数
+    // 已压缩的原文payloadLengths小于payloadRawLengths
+    private long[] payloadHigh;
+    private long[] payloadLow;
+    private int[] payloadOffsets;
+    private int[] payloadLengths;
+    private int[] payloadRefs;
+    private int[] payloadRawLengths;
+    // 空闲的原文编号通过payloadOffsets串成链表
+    private int payloadFreeList;
+    private int payloadAllocated;
+    private int payloadCount;
+    // 按原文指纹查找原文编号的开放寻址表，规则与slots相同
+    private int[] payloadSlots;
+    // 与条目数组同步扩容，读取时不加锁
+    private volatile CountingBloomFilter filter;
+
+    // 原文字节区，删除或覆盖留下的空洞在下次扩容时整理掉
+    private byte[] arena;
+    private int arenaUsed;
+    private int garbageBytes;
+
+    // 按引用保存的条目很少，单独存放
+    private final Map<Integer, PlaintextSource> references = new HashMap<>();
+
+    // 实际占用的字节数、去重后未压缩的字节数，以及不去重时各条目原文字节数之和
+    private long currentBytes;
+    private long rawBytes;
+    private long logicalBytes;
+    private int compressedCount;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expiredCount;
+
+    /**
+     * @param maxEntries 最大条目数
+     * @param maxBytes 原文总字节数上限（按UTF-8计算）
+     * @param ttlMillis 每条目存活时间，小于等于0表示永不过期
+     */
+    public MappingStore(int maxEntries, long maxBytes, long ttlMillis) {
+        this(maxEntries, maxBytes, ttlMillis, BACKGROUND_COMPRESSOR);
+    }
+
+    /**
+     * @param maxEntries 最大条目数
+     * @param maxBytes 原文总字节数上限（按UTF-8计算）
+     * @param ttlMillis 每条目存活时间，小于等于0表示永不过期
+     * @param compressor 执行长原文压缩的Executor，为null时不压缩
+     */
+    public MappingStore(int maxEntries, long maxBytes, long ttlMillis, Executor compressor) {
+        this(maxEntries, maxBytes, ttlMillis, compressor, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock 过期判断使用的毫秒时钟，测试中可以手动推进
+     */
+    MappingStore(int maxEntries, long maxBytes, long ttlMillis, Executor compressor, LongSupplier clock) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("maxEntries和maxBytes必须大于0");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        this.compressor = compressor;
+        this.clock = clock;
+        reset();
+    }
+
+    /**
+     * 写入映射，超出限额时淘汰最久未使用的条目
+     * @param key 查询键
+     * @param value 原始内容
+     */
+    public void put(String key, String value) {
+        long bytes = checkedSizeOf(value);
+        long high = Fingerprint.high(key);
+        long low = Fingerprint.low(key);
+        long contentHigh = Fingerprint.high(value);
+        long contentLow = Fingerprint.low(value);
+        long expires = expiresAt();
+        synchronized (this) {
+            int id = insert(high, low, expires);
+            attachPayload(id, value, contentHigh, contentLow, bytes);
+            linkLast(id);
+            trimTo(maxEntries, maxBytes);
+        }
+    }
+
+    /**
+     * 按引用写入映射，只保存原文的来源，查询时再读取
+     * @param key 查询键
+     * @param source 原文来源
+     */
+    public void putReference(String key, PlaintextSource source) {
+        long high = Fingerprint.high(key);
+        long low = Fingerprint.low(key);
+        long expires = expiresAt();
+        synchronized (this) {
+            int id = insert(high, low, expires);
+            release(id);
+            entryPayloads[id] = REFERENCE;
+            references.put(id, source);
+            currentBytes += REFERENCE_BYTES;
+            rawBytes += REFERENCE_BYTES;
+            logicalBytes += REFERENCE_BYTES;
+            linkLast(id);
+            trimTo(maxEntries, maxBytes);
+        }
+    }
+
+    /**
+     * 批量写入映射，整批只加锁一次，限额检查在全部写入后进行
+     * @param keys 查询键，为null的位置会被跳过
+     * @param values 与查询键一一对应的原始内容
+     */
+    public void putAll(String[] keys, List<String> values) {
+        long[] highs = new long[keys.length];
+        long[] lows = new long[keys.length];
+        long[] contentHighs = new long[keys.length];
+        long[] contentLows = new long[keys.length];
+        long[] sizes = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                String value = values.get(i);
+                highs[i] = Fingerprint.high(keys[i]);
+                lows[i] = Fingerprint.low(keys[i]);
+                contentHighs[i] = Fingerprint.high(value);
+                contentLows[i] = Fingerprint.low(value);
+                sizes[i] = checkedSizeOf(value);
+            }
+        }
+        long expires = expiresAt();
+        synchronized (this) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    int id = insert(highs[i], lows[i], expires);
+                    attachPayload(id, values.get(i), contentHighs[i], contentLows[i], sizes[i]);
+                    linkLast(id);
+                }
+            }
+            trimTo(maxEntries, maxBytes);
+        }
+    }
+
+    /**
+     * 批量查询映射，整批只加锁一次
+     * @param keys 查询键，为null的位置结果也为null
+     * @return 与查询键一一对应的原文字符串或PlaintextSource，不存在或已过期时为null
+     */
+    public Object[] getAll(String[] keys) {
+        long[] highs = new long[keys.length];
+        long[] lows = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                highs[i] = Fingerprint.high(keys[i]);
+                lows[i] = Fingerprint.low(keys[i]);
+            }
+        }
+        Object[] values = new Object[keys.length];
+        synchronized (this) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    values[i] = lookup(highs[i], lows[i]);
+                }
+            }
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = inflate(values[i]);
+        }
+        return values;
+    }
+
+    /**
+     * 查询映射
+     * @param key 查询键
+     * @return 原始内容，不存在、已过期或按引用保存时返回null
+     */
+    public String get(String key) {
+        Object value = getValue(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    /**
+     * 查询映射，包括按引用保存的条目
+     * @param key 查询键
+     * @return 原文字符串或PlaintextSource，不存在或已过期时返回null
+     */
+    public Object getValue(String key) {
+        long high = Fingerprint.high(key);
+        long low = Fingerprint.low(key);
+        Object value;
+        synchronized (this) {
+            value = lookup(high, low);
+        }
+        return inflate(value);
+    }
+
+    /**
+     * 不加锁地判断指纹是否可能存在
+     * @return 为false时查询一定不会命中
+     */
+    boolean mightContain(long high, long low) {
+        return filter.mightContain(high, low);
+    }
+
+    /**
+     * 删除映射
+     * @param key 查询键
+     * @return 映射存在并被删除时返回true
+     */
+    public boolean remove(String key) {
+        long high = Fingerprint.high(key);
+        long low = Fingerprint.low(key);
+        synchronized (this) {
+            int id = findSlot(slots, fingerprintHigh, fingerprintLow, high, low);
+            if (id == NONE) {
+                return false;
+            }
+            removeEntry(id);
+            return true;
+        }
+    }
+
+    /**
+     * 清空所有映射，并释放索引和字节区占用的内存
+     */
+    public synchronized void clear() {
+        reset();
+    }
+
+    /**
+     * 根据系统内存压力收缩存储
+     * @param level ComponentCallbacks2.onTrimMemory传入的级别
+     */
+    public synchronized void trimMemory(int level) {
+        purgeExpired();
+        if (level >= TRIM_MEMORY_COMPLETE) {
+            evictionCount += size;
+            clear();
+            return;
+        }
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            // 进入后台或内存严重不足时减半
+            trimTo(size / 2, currentBytes / 2);
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_LOW) {
+            // 界面不可见或内存偏低时收缩到四分之三
+            trimTo(size * 3L / 4, currentBytes * 3 / 4);
+        } else {
+            return;
+        }
+        // 淘汰只会留下空洞，整理后才能真正归还内存
+        compactArena(Math.max(INITIAL_ARENA_BYTES, arenaUsed - garbageBytes));
+    }
+
+    /**
+     * 清理所有已过期的条目
+     */
+    public synchronized void purgeExpired() {
+        if (expiresAt == null) {
+            return;
+        }
+        long now = now();
+        int id = head;
+        while (id != NONE) {
+            int following = next[id];
+            if (isExpired(expiresAt[id], now)) {
+                removeEntry(id);
+                expiredCount++;
+            }
+            id = following;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long sizeInBytes() {
+        return currentBytes;
+    }
+
+    public synchronized long evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return 当前存储状态的快照
+     */
+    public synchronized Stats stats() {
+        return new Stats(size, currentBytes, maxEntries, maxBytes,
+                hitCount, missCount, evictionCount, expiredCount, footprint(),
+                filter.estimatedFalsePositiveRate(), payloadCount, logicalBytes - rawBytes,
+                compressedCount, rawBytes - currentBytes);
+    }
+
+    // 以下方法调用方需持有锁
+
+    private void reset() {
+        fingerprintHigh = new long[INITIAL_CAPACITY];
+        fingerprintLow = new long[INITIAL_CAPACITY];
+        entryPayloads = new int[INITIAL_CAPACITY];
+        expiresAt = ttlMillis > 0 ? new long[INITIAL_CAPACITY] : null;
+        previous = new int[INITIAL_CAPACITY];
+        next = new int[INITIAL_CAPACITY];
+        head = NONE;
+        tail = NONE;
+        freeList = NONE;
+        allocated = 0;
+        size = 0;
+        slots = new int[INITIAL_CAPACITY * 2];
+        filter = new CountingBloomFilter(INITIAL_CAPACITY);
+        payloadHigh = new long[INITIAL_CAPACITY];
+        payloadLow = new long[INITIAL_CAPACITY];
+        payloadOffsets = new int[INITIAL_CAPACITY];
+        payloadLengths = new int[INITIAL_CAPACITY];
+        payloadRefs = new int[INITIAL_CAPACITY];
+        payloadRawLengths = new int[INITIAL_CAPACITY];
+        payloadFreeList = NONE;
+        payloadAllocated = 0;
+        payloadCount = 0;
+        payloadSlots = new int[INITIAL_CAPACITY * 2];
+        arena = new byte[INITIAL_ARENA_BYTES];
+        arenaUsed = 0;
+        garbageBytes = 0;
+        references.clear();
+        currentBytes = 0;
+        rawBytes = 0;
+        logicalBytes = 0;
+        compressedCount = 0;
+    }
+
+    // 查找或新建条目并返回编号；条目此时不在LRU链表中，不会被淘汰，设置好原文后由调用方放回末尾
+    private int insert(long high, long low, long expires) {
+        int id = findSlot(slots, fingerprintHigh, fingerprintLow, high, low);
+        if (id == NONE) {
+            id = allocate(high, low);
+        } else {
+            unlink(id);
+        }
+        if (expiresAt != null) {
+            expiresAt[id] = expires;
+        }
+        return id;
+    }
+
+    // 让条目引用该内容的原文，不存在时才写入字节区，再释放条目原先的原文
+    // 原文指纹与查询键一样按128位视为唯一
+    private void attachPayload(int id, String value, long contentHigh, long contentLow, long bytes) {
+        int payload = findSlot(payloadSlots, payloadHigh, payloadLow, contentHigh, contentLow);
+        boolean created = payload == NONE;
+        if (created) {
+            int length = (int) bytes;
+            ensureArena(length);
+            payload = allocatePayload(contentHigh, contentLow);
+            payloadOffsets[payload] = arenaUsed;
+            payloadLengths[payload] = length;
+            payloadRawLengths[payload] = length;
+            arenaUsed = writeUtf8(value, arena, arenaUsed);
+            currentBytes += length;
+            rawBytes += length;
+        }
+        payloadRefs[payload]++;
+        logicalBytes += payloadRawLengths[payload];
+        release(id);
+        entryPayloads[id] = payload;
+        // 引用计数设置好之后再提交，同步执行的压缩器也能看到有效的原文
+        if (created && compressor != null && payloadLengths[payload] >= COMPRESS_THRESHOLD_BYTES) {
+            scheduleCompression(payload);
+        }
+    }
+
+    private void scheduleCompression(int payload) {
+        long high = payloadHigh[payload];
+        long low = payloadLow[payload];
+        compressor.execute(() -> compressPayload(payload, high, low));
+    }
+
+    // 在后台线程执行：锁内复制原文，锁外压缩，再回到锁内确认原文未变后原地替换
+    private void compressPayload(int payload, long high, long low) {
+        byte[] raw;
+        synchronized (this) {
+            if (!isUncompressed(payload, high, low)) {
+                return;
+            }
+            int offset = payloadOffsets[payload];
+            raw = Arrays.copyOfRange(arena, offset, offset + payloadLengths[payload]);
+        }
+        byte[] compressed = PayloadCodec.compress(raw);
+        if (compressed == null) {
+            return;
+        }
+        synchronized (this) {
+            // 压缩期间原文可能已被释放、重用或整理到别处，只按当前位置写入
+            if (!isUncompressed(payload, high, low)) {
+                return;
+            }
+            System.arraycopy(compressed, 0, arena, payloadOffsets[payload], compressed.length);
+            int saved = payloadLengths[payload] - compressed.length;
+            payloadLengths[payload] = compressed.length;
+            // 原位置剩余的部分成为空洞，下次整理时回收
+            garbageBytes += saved;
+            currentBytes -= saved;
+            compressedCount++;
+        }
+    }
+
+    private boolean isUncompressed(int payload, long high, long low) {
+        return payload < payloadAllocated && payloadRefs[payload] > 0
+                && payloadHigh[payload] == high && payloadLow[payload] == low
+                && payloadLengths[payload] == payloadRawLengths[payload];
+    }
+
+    private Object lookup(long high, long low) {
+        int id = findSlot(slots, fingerprintHigh, fingerprintLow, high, low);
+        if (id == NONE) {
+            missCount++;
+            return null;
+        }
+        if (expiresAt != null && isExpired(expiresAt[id], now())) {
+            removeEntry(id);
+            expiredCount++;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        unlink(id);
+        linkLast(id);
+        int payload = entryPayloads[id];
+        if (payload == REFERENCE) {
+            return references.get(id);
+        }
+        int offset = payloadOffsets[payload];
+        int length = payloadLengths[payload];
+        if (length < payloadRawLengths[payload]) {
+            // 只复制压缩后的字节，解压由调用方在锁外进行
+            return new Compressed(Arrays.copyOfRange(arena, offset, offset + length), payloadRawLengths[payload]);
+        }
+        return decodeUtf8(arena, offset, length);
+    }
+
+    private void trimTo(long entryLimit, long byteLimit) {
+        while ((size > entryLimit || currentBytes > byteLimit) && head != NONE) {
+            removeEntry(head);
+            evictionCount++;
+        }
+    }
+
+    private int allocate(long high, long low) {
+        int id;
+        if (freeList != NONE) {
+            id = freeList;
+            freeList = next[id];
+        } else {
+            if (allocated == fingerprintHigh.length) {
+                growEntries();
+            }
+            id = allocated++;
+        }
+        fingerprintHigh[id] = high;
+        fingerprintLow[id] = low;
+        entryPayloads[id] = NONE;
+        size++;
+        if (size * 2 > slots.length) {
+            slots = rehash(slots, fingerprintLow, slots.length * 2);
+        }
+        insertSlot(slots, fingerprintLow, id);
+        filter.add(high, low);
+        return id;
+    }
+
+    private int allocatePayload(long high, long low) {
+        int payload;
+        if (payloadFreeList != NONE) {
+            payload = payloadFreeList;
+            payloadFreeList = payloadOffsets[payload];
+        } else {
+            if (payloadAllocated == payloadHigh.length) {
+                growPayloads();
+            }
+            payload = payloadAllocated++;
+        }
+        payloadHigh[payload] = high;
+        payloadLow[payload] = low;
+        payloadRefs[payload] = 0;
+        payloadCount++;
+        if (payloadCount * 2 > payloadSlots.length) {
+            payloadSlots = rehash(payloadSlots, payloadLow, payloadSlots.length * 2);
+        }
+        insertSlot(payloadSlots, payloadLow, payload);
+        return payload;
+    }
+
+    private void removeEntry(int id) {
+        removeSlot(slots, fingerprintLow, id);
+        filter.remove(fingerprintHigh[id], fingerprintLow[id]);
+        unlink(id);
+        release(id);
+        next[id] = freeList;
+        freeList = id;
+        size--;
+    }
+
+    // 释放条目对原文的引用，最后一个引用释放时原文在字节区中留下的空洞计入garbageBytes
+    private void release(int id) {
+        int payload = entryPayloads[id];
+        entryPayloads[id] = NONE;
+        if (payload == REFERENCE) {
+            references.remove(id);
+            currentBytes -= REFERENCE_BYTES;
+            logicalBytes -= REFERENCE_BYTES;
+            return;
+        }
+        if (payload == NONE) {
+            return;
+        }
+        int length = payloadLengths[payload];
+        logicalBytes -= payloadRawLengths[payload];
+        if (--payloadRefs[payload] > 0) {
+            return;
+        }
+        removeSlot(payloadSlots, payloadLow, payload);
+        garbageBytes += length;
+        currentBytes -= length;
+        rawBytes -= payloadRawLengths[payload];
+        if (length < payloadRawLengths[payload]) {
+            compressedCount--;
+        }
+        payloadLengths[payload] = 0;
+        payloadRawLengths[payload] = 0;
+        payloadOffsets[payload] = payloadFreeList;
+        payloadFreeList = payload;
+        payloadCount--;
+    }
+
+    private void growEntries() {
+        int capacity = fingerprintHigh.length * 2;
+        fingerprintHigh = Arrays.copyOf(fingerprintHigh, capacity);
+        fingerprintLow = Arrays.copyOf(fingerprintLow, capacity);
+        entryPayloads = Arrays.copyOf(entryPayloads, capacity);
+        if (expiresAt != null) {
+            expiresAt = Arrays.copyOf(expiresAt, capacity);
+        }
+        previous = Arrays.copyOf(previous, capacity);
+        next = Arrays.copyOf(next, capacity);
+
+        // 过滤器按新容量重建，保持误判率不随条目增加而上升
+        CountingBloomFilter rebuilt = new CountingBloomFilter(capacity);
+        for (int slot : slots) {
+            if (slot != 0) {
+                rebuilt.add(fingerprintHigh[slot - 1], fingerprintLow[slot - 1]);
+            }
+        }
+        filter = rebuilt;
+    }
+
+    private void growPayloads() {
+        int capacity = payloadHigh.length * 2;
+        payloadHigh = Arrays.copyOf(payloadHigh, capacity);
+        payloadLow = Arrays.copyOf(payloadLow, capacity);
+        payloadOffsets = Arrays.copyOf(payloadOffsets, capacity);
+        payloadLengths = Arrays.copyOf(payloadLengths, capacity);
+        payloadRefs = Arrays.copyOf(payloadRefs, capacity);
+        payloadRawLengths = Arrays.copyOf(payloadRawLengths, capacity);
+    }
+
+    // 条目表和原文表共用的开放寻址操作，table中保存编号+1，按指纹低64位定位
+
+    private static int findSlot(int[] table, long[] highs, long[] lows, long high, long low) {
+        int mask = table.length - 1;
+        for (int index = (int) low & mask; ; index = (index + 1) & mask) {
+            int slot = table[index];
+            if (slot == 0) {
+                return NONE;
+            }
+            int id = slot - 1;
+            if (lows[id] == low && highs[id] == high) {
+                return id;
+            }
+        }
+    }
+
+    private static void insertSlot(int[] table, long[] lows, int id) {
+        int mask = table.length - 1;
+        int index = (int) lows[id] & mask;
+        while (table[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        table[index] = id + 1;
+    }
+
+    // 删除后把同一探测序列上的后续条目前移，表中不需要墓碑
+    private static void removeSlot(int[] table, long[] lows, int id) {
+        int mask = table.length - 1;
+        int hole = (int) lows[id] & mask;
+        while (table[hole] != id + 1) {
+            hole = (hole + 1) & mask;
+        }
+        int index = hole;
+        while (true) {
+            index = (index + 1) & mask;
+            int slot = table[index];
+            if (slot == 0) {
+                break;
+            }
+            int home = (int) lows[slot - 1] & mask;
+            // home在(hole, index]之间的条目留在原处仍然可以找到
+            boolean reachable = hole <= index
+                    ? hole < home && home <= index
+                    : hole < home || home <= index;
+            if (!reachable) {
+                table[hole] = slot;
+                hole = index;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private static int[] rehash(int[] table, long[] lows, int capacity) {
+        int[] rehashed = new int[capacity];
+        for (int slot : table) {
+            if (slot != 0) {
+                insertSlot(rehashed, lows, slot - 1);
+            }
+        }
+        return rehashed;
+    }
+
+    private void ensureArena(int needed) {
+        if (needed <= arena.length - arenaUsed) {
+            return;
+        }
+        // 超出字节区寻址上限时先淘汰最久未使用的条目
+        while ((long) arenaUsed - garbageBytes + needed > MAX_ARENA_BYTES && head != NONE) {
+            removeEntry(head);
+            evictionCount++;
+        }
+        long required = (long) arenaUsed - garbageBytes + needed;
+        long capacity = Math.max(INITIAL_ARENA_BYTES, required + (required >> 1));
+        compactArena((int) Math.min(MAX_ARENA_BYTES, capacity));
+    }
+
+    // 把仍被引用的原文复制到新的字节区，去掉所有空洞
+    private void compactArena(int capacity) {
+        byte[] compacted = new byte[capacity];
+        int position = 0;
+        for (int payload = 0; payload < payloadAllocated; payload++) {
+            if (payloadRefs[payload] > 0) {
+                int length = payloadLengths[payload];
+                System.arraycopy(arena, payloadOffsets[payload], compacted, position, length);
+                payloadOffsets[payload] = position;
+                position += length;
+            }
+        }
+        arena = compacted;
+        arenaUsed = position;
+        garbageBytes = 0;
+    }
+
+    private void unlink(int id) {
+        int before = previous[id];
+        int after = next[id];
+        if (before == NONE) {
+            head = after;
+        } else {
+            next[before] = after;
+        }
+        if (after == NONE) {
+            tail = before;
+        } else {
+            previous[after] = before;
+        }
+    }
+
+    private void linkLast(int id) {
+        previous[id] = tail;
+        next[id] = NONE;
+        if (tail == NONE) {
+            head = id;
+        } else {
+            next[tail] = id;
+        }
+        tail = id;
+    }
+
+    // 索引和字节区实际占用的堆内存
+    private long footprint() {
+        long perEntry = 8 + 8 + 4 + 4 + 4 + (expiresAt != null ? 8 : 0);
+        long perPayload = 8 + 8 + 4 + 4 + 4 + 4;
+        return perEntry * fingerprintHigh.length + 4L * slots.length
+                + perPayload * payloadHigh.length + 4L * payloadSlots.length
+                + arena.length + filter.sizeInBytes();
+    }
+
+    private long expiresAt() {
+        return ttlMillis > 0 ? now() + ttlMillis : 0;
+    }
+
+    private static boolean isExpired(long expiresAt, long now) {
+        return expiresAt != 0 && expiresAt <= now;
+    }
+
+    private long now() {
+        return clock.getAsLong();
+    }
+
+    // 查询结果中的压缩原文在锁外解压
+    private static Object inflate(Object value) {
+        if (value instanceof Compressed) {
+            Compressed compressed = (Compressed) value;
+            return PayloadCodec.decompress(compressed.bytes, compressed.rawLength);
+        }
+        return value;
+    }
+
+    private static ThreadPoolExecutor createCompressor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "kun-compress");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static long checkedSizeOf(String value) {
+        long bytes = sizeOf(value);
+        if (bytes > MAX_ARENA_BYTES) {
+            throw new IllegalArgumentException("原文过大：" + bytes + "字节");
+        }
+        return bytes;
+    }
+
+    /**
+     * 计算原文的UTF-8字节数，不产生额外的字节数组
+     * 不成对的代理字符与其他基本平面字符一样按三个字节计算
+     */
+    static long sizeOf(String value) {
+        long bytes = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 4;
+                    i++;
+                } else {
+                    bytes += 3;
+                }
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 把文本编码为UTF-8，不成对的代理字符也保留下来，用decodeUtf8可以原样还原
+     */
+    static byte[] encodeUtf8(String value) {
+        long bytes = checkedSizeOf(value);
+        byte[] out = new byte[(int) bytes];
+        writeUtf8(value, out, 0);
+        return out;
+    }
+
+    /**
+     * 还原encodeUtf8的结果，也兼容标准的UTF-8
+     */
+    static String decodeUtf8(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i + 1 < end; i++) {
+            // 代理字符的三字节编码以ED A0到ED BF开头，标准UTF-8中不会出现
+            if (bytes[i] == (byte) 0xed && (bytes[i + 1] & 0xe0) == 0xa0) {
+                return decodeWithSurrogates(bytes, offset, end);
+            }
+        }
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    // 数据由writeUtf8写入，不再检查格式
+    private static String decodeWithSurrogates(byte[] bytes, int position, int end) {
+        StringBuilder builder = new StringBuilder(end - position);
+        while (position < end) {
+            int b = bytes[position++] & 0xff;
+            if (b < 0x80) {
+                builder.append((char) b);
+            } else if (b < 0xe0) {
+                builder.append((char) (((b & 0x1f) << 6) | (bytes[position++] & 0x3f)));
+            } else if (b < 0xf0) {
+                builder.append((char) (((b & 0x0f) << 12) | ((bytes[position++] & 0x3f) << 6)
+                        | (bytes[position++] & 0x3f)));
+            } else {
+                int codePoint = ((b & 0x07) << 18) | ((bytes[position++] & 0x3f) << 12)
+                        | ((bytes[position++] & 0x3f) << 6) | (bytes[position++] & 0x3f);
+                builder.appendCodePoint(codePoint);
+            }
+        }
+        return builder.toString();
+    }
+
+    // 直接把原文编码进字节区，除不成对的代理字符外与String.getBytes(UTF_8)一致，返回写入后的位置
+    private static int writeUtf8(String value, byte[] out, int position) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out[position++] = (byte) c;
+            } else if (c < 0x800) {
+                out[position++] = (byte) (0xc0 | (c >> 6));
+                out[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    out[position++] = (byte) (0xf0 | (codePoint >> 18));
+                    out[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    out[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    out[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else {
+                    // 不成对的代理字符按码位编码，String.getBytes会把它换成"?"
+                    out[position++] = (byte) (0xe0 | (c >> 12));
+                    out[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    out[position++] = (byte) (0x80 | (c & 0x3f));
+                }
+            } else {
+                out[position++] = (byte) (0xe0 | (c >> 12));
+                out[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                out[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return position;
+    }
+
+    /**
+     * 锁内取出的压缩原文
+     */
+    private static final class Compressed {
+        final byte[] bytes;
+        final int rawLength;
+
+        Compressed(byte[] bytes, int rawLength) {
+            this.bytes = bytes;
+            this.rawLength = rawLength;
+        }
+    }
+
+    /**
+     * 存储状态快照
+     */
+    public static final class Stats {
+        public final int size;
+        public final long bytes;
+        public final int maxEntries;
+        public final long maxBytes;
+        public final long hitCount;
+        public final long missCount;
+        public final long evictionCount;
+        public final long expiredCount;
+        // 索引、过滤器和字节区占用的堆内存
+        public final long heapBytes;
+        // 按过滤器当前填充率估计的误判率
+        public final double falsePositiveRate;
+        // 去重后实际保存的原文条数
+        public final int payloadCount;
+        // 相同原文只保存一份而省下的字节数
+        public final long dedupBytes;
+        // 已压缩的原文条数和压缩省下的字节数
+        public final int compressedCount;
+        public final long compressionBytes;
+
+        Stats(int size, long bytes, int maxEntries, long maxBytes, long hitCount, long missCount,
+              long evictionCount, long expiredCount, long heapBytes, double falsePositiveRate,
+              int payloadCount, long dedupBytes, int compressedCount, long compressionBytes) {
+            this.size = size;
+            this.bytes = bytes;
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.expiredCount = expiredCount;
+            this.heapBytes = heapBytes;
+            this.falsePositiveRate = falsePositiveRate;
+            this.payloadCount = payloadCount;
+            this.dedupBytes = dedupBytes;
+            this.compressedCount = compressedCount;
+            this.compressionBytes = compressionBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "条目数: " + size + "/" + maxEntries
+                    + ", 字节数: " + bytes + "/" + maxBytes
+                    + ", 原文: " + payloadCount + "条, 去重节省: " + dedupBytes
+                    + ", 压缩: " + compressedCount + "条, 压缩节省: " + compressionBytes
+                    + ", 堆占用: " + heapBytes
+                    + ", 命中: " + hitCount
+                    + ", 未命中: " + missCount
+                    + ", 淘汰: " + evictionCount
+                    + ", 过期: " + expiredCount
+                    + String.format(Locale.ROOT, ", 过滤器估计误判率: %.3f%%", falsePositiveRate * 100);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.example.kun_said.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 坤曰密文扫描器
+ * 一次正向扫描完成前缀校验、加密部分与凭证的拆分以及空白统计，只返回偏移量，不产生新字符串。
+ * 匹配规则与原正则"坤曰：只因你太美，你我美积极，(.*?)，(.*)$"一致：
+ * 加密部分到第一个"，"为止，凭证到文本末尾，二者都不能跨行（末尾的一个换行除外）。
+ * 第二版前缀之后必须是完整的第二版编码才会被认出，否则继续查找后面的第一版密文。
+ */
+public final class MessageScanner {
+    static final String HEADER_V1 = "坤曰：只因你太美，你我美积极，";
+    static final String HEADER_V2 = KunCodec.HEADER;
+
+    private static final char SEPARATOR = '，';
+
+    // 两个版本前缀组成的多模式匹配自动机，下标与版本号一致
+    private static final HeaderAutomaton HEADERS = new HeaderAutomaton(
+            new String[]{null, HEADER_V1, HEADER_V2});
+
+    private MessageScanner() {
+    }
+
+    /**
+     * 扫描结果，可重复使用
+     */
+    public static final class Match {
+        public int version;
+        public int start;
+        public int bodyStart;
+        public int bodyEnd;
+        public int keyStart;
+        public int keyEnd;
+        // 去掉空白后的加密部分长度
+        public int compactBodyLength;
+
+        /**
+         * @return 凭证的视图，不复制字符
+         */
+        public CharSequence key(CharSequence text) {
+            return text.subSequence(keyStart, keyEnd);
+        }
+
+        /**
+         * 逐字符比较凭证，不产生子串
+         */
+        public boolean keyEquals(CharSequence text, String key) {
+            int length = keyEnd - keyStart;
+            if (length != key.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (text.charAt(keyStart + i) != key.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 把去掉空白后的加密部分追加到builder
+         */
+        public void appendCompactBody(CharSequence text, StringBuilder builder) {
+            for (int i = bodyStart; i < bodyEnd; i++) {
+                char c = text.charAt(i);
+                if (!isRegexWhitespace(c)) {
+                    builder.append(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * 查找第一条完整的坤曰密文
+     * @param text 待扫描文本
+     * @param match 用于保存结果的对象
+     * @return 找到时返回true
+     */
+    public static boolean find(CharSequence text, Match match) {
+        int length = text.length();
+        int limit = length - HEADER_V1.length();
+        for (int i = 0; i <= limit; i++) {
+            if (text.charAt(i) != '坤' || text.charAt(i + 1) != '曰') {
+                continue;
+            }
+            int version;
+            int bodyStart;
+            if (regionMatches(text, i, HEADER_V1)) {
+                version = EncryptionUtil.VERSION_MAPPED;
+                bodyStart = i + HEADER_V1.length();
+            } else if (regionMatches(text, i, HEADER_V2) && isV2Body(text, i + HEADER_V2.length())) {
+                version = EncryptionUtil.VERSION_SELF_CONTAINED;
+                bodyStart = i + HEADER_V2.length();
+            } else {
+                continue;
+            }
+            int resume = scanRest(text, bodyStart, match);
+            if (resume < 0) {
+                match.version = version;
+                match.start = i;
+                match.bodyStart = bodyStart;
+                return true;
+            }
+            // 失败位置之前出现的前缀也必然失败，直接跳过，保证整体线性
+            i = resume - 1;
+        }
+        return false;
+    }
+
+    /**
+     * 查找文档中嵌入的所有坤曰密文
+     * 用两个版本前缀构成的Aho-Corasick自动机一次扫描全文。嵌入的密文以所在行为界：
+     * 加密部分只能由"只因你太美"和空白组成，凭证到行尾为止并去掉行尾空白，前后的普通文字不会被误认
+     * @param text 待扫描文本
+     * @param matches 找到的密文按出现顺序追加到该列表
+     */
+    public static void findAll(CharSequence text, List<Match> matches) {
+        int length = text.length();
+        int state = 0;
+        for (int i = 0; i < length; i++) {
+            state = HEADERS.next(state, text.charAt(i));
+            int version = HEADERS.matched(state);
+            if (version == 0) {
+                continue;
+            }
+            int bodyStart = i + 1;
+            Match match = new Match();
+            if ((version != EncryptionUtil.VERSION_SELF_CONTAINED || isV2Body(text, bodyStart))
+                    && scanEmbedded(text, bodyStart, match)) {
+                match.version = version;
+                match.start = bodyStart - HEADERS.lengthOf(version);
+                match.bodyStart = bodyStart;
+                matches.add(match);
+                i = match.keyEnd - 1;
+            }
+            state = 0;
+        }
+    }
+
+    // 嵌入密文的其余部分，加密部分和凭证都不能跨行
+    private static boolean scanEmbedded(CharSequence text, int bodyStart, Match match) {
+        int length = text.length();
+        int compact = 0;
+        int i = bodyStart;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == SEPARATOR) {
+                break;
+            }
+            if (isKunDigit(c)) {
+                compact++;
+            } else if (isLineTerminator(c) || !isRegexWhitespace(c)) {
+                return false;
+            }
+        }
+        if (i == length || compact == 0) {
+            return false;
+        }
+        int keyStart = i + 1;
+        int keyEnd = keyStart;
+        while (keyEnd < length && !isLineTerminator(text.charAt(keyEnd))) {
+            keyEnd++;
+        }
+        while (keyEnd > keyStart && Character.isWhitespace(text.charAt(keyEnd - 1))) {
+            keyEnd--;
+        }
+        if (keyEnd == keyStart) {
+            return false;
+        }
+        match.bodyEnd = i;
+        match.keyStart = keyStart;
+        match.keyEnd = keyEnd;
+        match.compactBodyLength = compact;
+        return true;
+    }
+
+    // 第二版的加密部分只由"只因你太美"和空白组成，每4个数字是一个不超过255的字节，至少包含校验码
+    // 遇到第一个不合格的字符就停止，加密部分中不会出现"坤"，整体扫描仍是线性的
+    private static boolean isV2Body(CharSequence text, int bodyStart) {
+        int length = text.length();
+        int value = 0;
+        int count = 0;
+        int bytes = 0;
+        for (int i = bodyStart; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == SEPARATOR) {
+                return count == 0 && bytes >= KunCodec.CHECK_SIZE;
+            }
+            int digit = KunCodec.digitOf(c);
+            if (digit < 0) {
+                if (isRegexWhitespace(c) && !isLineTerminator(c)) {
+                    continue;
+                }
+                return false;
+            }
+            value = value * 5 + digit;
+            if (++count == KunCodec.DIGITS_PER_BYTE) {
+                if (value > 0xff) {
+                    return false;
+                }
+                bytes++;
+                value = 0;
+                count = 0;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isKunDigit(char c) {
+        return c == '只' || c == '因' || c == '你' || c == '太' || c == '美';
+    }
+
+    // 从加密部分开始扫描到文本末尾，填充除版本和起始位置之外的字段
+    // 成功返回-1，失败返回可以继续查找前缀的位置
+    private static int scanRest(CharSequence text, int bodyStart, Match match) {
+        int length = text.length();
+        int compact = 0;
+        int i = bodyStart;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == SEPARATOR) {
+                break;
+            }
+            if (isLineTerminator(c)) {
+                return i;
+            }
+            if (!isRegexWhitespace(c)) {
+                compact++;
+            }
+        }
+        if (i == length) {
+            return length;
+        }
+        int bodyEnd = i;
+        int keyStart = i + 1;
+        int keyEnd = keyStart;
+        while (keyEnd < length && !isLineTerminator(text.charAt(keyEnd))) {
+            keyEnd++;
+        }
+        if (!isFinalLineTerminator(text, keyEnd)) {
+            return keyEnd;
+        }
+        match.bodyEnd = bodyEnd;
+        match.keyStart = keyStart;
+        match.keyEnd = keyEnd;
+        match.compactBodyLength = compact;
+        return -1;
+    }
+
+    // 与正则中$的含义一致：文本末尾，或末尾唯一的一个换行之前
+    private static boolean isFinalLineTerminator(CharSequence text, int index) {
+        int length = text.length();
+        if (index == length) {
+            return true;
+        }
+        if (text.charAt(index) == '\r' && index + 2 == length && text.charAt(index + 1) == '\n') {
+            return true;
+        }
+        return index + 1 == length;
+    }
+
+    private static boolean regionMatches(CharSequence text, int offset, String header) {
+        int length = header.length();
+        if (offset + length > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(offset + i) != header.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 正则中"."不匹配的字符
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    // 正则中"\s"匹配的字符
+    static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * 多个前缀的Aho-Corasick自动机
+     * 状态转移保存在按字符排序的数组中，扫描时不分配对象
+     */
+    private static final class HeaderAutomaton {
+        private final int[] lengths;
+        private char[][] edges = new char[1][0];
+        private int[][] targets = new int[1][0];
+        private int[] fail = new int[1];
+        // 到达该状态时匹配到的前缀下标，0表示没有
+        private int[] output = new int[1];
+        private int states = 1;
+
+        HeaderAutomaton(String[] patterns) {
+            lengths = new int[patterns.length];
+            for (int p = 0; p < patterns.length; p++) {
+                if (patterns[p] == null) {
+                    continue;
+                }
+                lengths[p] = patterns[p].length();
+                int state = 0;
+                for (int i = 0; i < patterns[p].length(); i++) {
+                    char c = patterns[p].charAt(i);
+                    int target = edge(state, c);
+                    state = target >= 0 ? target : addEdge(state, c);
+                }
+                output[state] = p;
+            }
+            buildFailureLinks();
+        }
+
+        int next(int state, char c) {
+            while (true) {
+                int target = edge(state, c);
+                if (target >= 0) {
+                    return target;
+                }
+                if (state == 0) {
+                    return 0;
+                }
+                state = fail[state];
+            }
+        }
+
+        int matched(int state) {
+            return output[state];
+        }
+
+        int lengthOf(int pattern) {
+            return lengths[pattern];
+        }
+
+        private int edge(int state, char c) {
+            int index = Arrays.binarySearch(edges[state], c);
+            return index >= 0 ? targets[state][index] : -1;
+        }
+
+        private int addEdge(int state, char c) {
+            if (states == fail.length) {
+                int capacity = states * 2;
+                edges = Arrays.copyOf(edges, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                fail = Arrays.copyOf(fail, capacity);
+                output = Arrays.copyOf(output, capacity);
+            }
+            int created = states++;
+            edges[created] = new char[0];
+            targets[created] = new int[0];
+
+            char[] oldEdges = edges[state];
+            int[] oldTargets = targets[state];
+            int insertAt = -Arrays.binarySearch(oldEdges, c) - 1;
+            char[] newEdges = new char[oldEdges.length + 1];
+            int[] newTargets = new int[oldTargets.length + 1];
+            System.arraycopy(oldEdges, 0, newEdges, 0, insertAt);
+            System.arraycopy(oldTargets, 0, newTargets, 0, insertAt);
+            newEdges[insertAt] = c;
+            newTargets[insertAt] = created;
+            System.arraycopy(oldEdges, insertAt, newEdges, insertAt + 1, oldEdges.length - insertAt);
+            System.arraycopy(oldTargets, insertAt, newTargets, insertAt + 1, oldTargets.length - insertAt);
+            edges[state] = newEdges;
+            targets[state] = newTargets;
+            return created;
+        }
+
+        // 按层次遍历计算失败指针；前缀互不包含，输出不需要沿失败链合并
+        private void buildFailureLinks() {
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int target : targets[0]) {
+                fail[target] = 0;
+                queue.add(target);
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                for (int i = 0; i < edges[state].length; i++) {
+                    char c = edges[state][i];
+                    int target = targets[state][i];
+                    int fallback = fail[state];
+                    int link = edge(fallback, c);
+                    while (link < 0 && fallback != 0) {
+                        fallback = fail[fallback];
+                        link = edge(fallback, c);
+                    }
+                    fail[target] = link >= 0 && link != target ? link : 0;
+                    queue.add(target);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.kun_said.util;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 加密解密的运行指标
+ * 计数使用LongAdder，延迟使用无锁直方图，记录路径上不分配对象
+ */
+public final class Metrics {
+    static final LatencyHistogram ENCRYPT = new LatencyHistogram();
+    static final LatencyHistogram DECRYPT = new LatencyHistogram();
+    static final LatencyHistogram EXTRACT_KEY = new LatencyHistogram();
+
+    private static final LongAdder lookupHits = new LongAdder();
+    private static final LongAdder lookupMisses = new LongAdder();
+    private static final LongAdder journalHits = new LongAdder();
+    private static final LongAdder rejected = new LongAdder();
+    private static final LongAdder encryptedChars = new LongAdder();
+    private static final LongAdder filterRejected = new LongAdder();
+    private static final LongAdder filterFalsePositives = new LongAdder();
+
+    private Metrics() {
+    }
+
+    static void recordEncrypt(long startNanos, int contentLength) {
+        ENCRYPT.record(System.nanoTime() - startNanos);
+        encryptedChars.add(contentLength);
+    }
+
+    // 映射查询结果：命中（含从磁盘日志读回）或未命中
+    static void recordLookup(boolean hit, boolean fromJournal) {
+        if (!hit) {
+            lookupMisses.increment();
+            return;
+        }
+        lookupHits.increment();
+        if (fromJournal) {
+            journalHits.increment();
+        }
+    }
+
+    // 被布隆过滤器直接排除，同时计为一次未命中
+    static void recordFiltered() {
+        lookupMisses.increment();
+        filterRejected.increment();
+    }
+
+    // 通过了布隆过滤器但映射中没有
+    static void recordFalsePositive() {
+        filterFalsePositives.increment();
+    }
+
+    // 格式不正确或凭证不匹配，未进入映射查询
+    static void recordRejected() {
+        rejected.increment();
+    }
+
+    /**
+     * @return 当前所有指标的快照
+     */
+    public static Snapshot snapshot() {
+        return new Snapshot(ENCRYPT.snapshot(), DECRYPT.snapshot(), EXTRACT_KEY.snapshot(),
+                lookupHits.sum(), lookupMisses.sum(), journalHits.sum(), rejected.sum(),
+                encryptedChars.sum(), filterRejected.sum(), filterFalsePositives.sum(),
+                EncryptionUtil.getStoreStats());
+    }
+
+    /**
+     * 指标快照
+     */
+    public static final class Snapshot {
+        public final LatencyHistogram.Snapshot encrypt;
+        public final LatencyHistogram.Snapshot decrypt;
+        public final LatencyHistogram.Snapshot extractKey;
+        public final long lookupHits;
+        public final long lookupMisses;
+        public final long journalHits;
+        public final long rejected;
+        public final long encryptedChars;
+        public final long filterRejected;
+        public final long filterFalsePositives;
+        public final MappingStore.Stats store;
+
+        Snapshot(LatencyHistogram.Snapshot encrypt, LatencyHistogram.Snapshot decrypt,
+                 LatencyHistogram.Snapshot extractKey, long lookupHits, long lookupMisses,
+                 long journalHits, long rejected, long encryptedChars, long filterRejected,
+                 long filterFalsePositives, MappingStore.Stats store) {
+            this.encrypt = encrypt;
+            this.decrypt = decrypt;
+            this.extractKey = extractKey;
+            this.lookupHits = lookupHits;
+            this.lookupMisses = lookupMisses;
+            this.journalHits = journalHits;
+            this.rejected = rejected;
+            this.encryptedChars = encryptedChars;
+            this.filterRejected = filterRejected;
+            this.filterFalsePositives = filterFalsePositives;
+            this.store = store;
+        }
+
+        /**
+         * @return 实测误判率：不存在的查询中未被过滤器排除的比例
+         */
+        public double falsePositiveRate() {
+            long negatives = filterRejected + filterFalsePositives;
+            return negatives == 0 ? 0 : (double) filterFalsePositives / negatives;
+        }
+
+        @Override
+        public String toString() {
+            return "加密 " + encrypt + "\n"
+                    + "解密 " + decrypt + "\n"
+                    + "凭证提取 " + extractKey + "\n"
+                    + "映射查询 命中: " + lookupHits + "（其中磁盘日志: " + journalHits + "）"
+                    + ", 未命中: " + lookupMisses + ", 格式或凭证错误: " + rejected + "\n"
+                    + "过滤器 拦截: " + filterRejected + ", 误判: " + filterFalsePositives
+                    + String.format(Locale.ROOT, ", 实测误判率: %.3f%%", falsePositiveRate() * 100) + "\n"
+                    + "累计加密字符数: " + encryptedChars + "\n"
+                    + "映射存储 " + store;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.kun_said.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 映射存储中较长原文的压缩
+ * 使用不带头尾的Deflate格式，并预置一份常用汉字和标点的字典：中文每个字在UTF-8中占三个字节，
+ * 文本开头还没有可以回溯的内容时，也能直接引用字典中的字节序列，短文本的压缩率明显更好。
+ * 压缩器和解压器按线程复用。
+ */
+final class PayloadCodec {
+    // 坤曰固定用语、常用词、标点和常用字表，最常用的字表放在末尾，回溯距离最短
+    private static final byte[] DICTIONARY = ("坤曰只因你太美积极凭证密文加密解密原文消息内容"
+            + "东西南北春夏秋冬早晚今明昨周年月日时分秒点钟号星期"
+            + "爱情朋友同学老师工作公司学校家里手机电话微信群聊发送收到回复"
+            + "开始结束问题情况知道觉得应该可以需要已经还是因为所以但是如果"
+            + "什么怎么这样那样这里那里现在时候一下一起一个没有不是就是我们你们他们"
+            + "，。、；：？！“”‘’（）《》…—"
+            + "的了是我不在人有这他中大为上个国来到说们和地也子时道出而要于就下得可你年生自会那后能对着事其里所去行过家十用发天如然作方成者多日都三小军二无同么经法当起与好看学进种将还分此心前面又定见只主没公从").getBytes(StandardCharsets.UTF_8);
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+    };
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    private PayloadCodec() {
+    }
+
+    /**
+     * 压缩UTF-8编码的原文
+     * @return 压缩后的字节，没有变小时返回null
+     */
+    static byte[] compress(byte[] raw) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2);
+        byte[] buffer = new byte[Math.min(raw.length, 8192)];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            out.write(buffer, 0, count);
+            // 压缩结果不小于原文时放弃，保留原文
+            if (out.size() >= raw.length) {
+                return null;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解压并解码原文
+     * @param rawLength 原文的UTF-8字节数，编码方式见MappingStore.encodeUtf8
+     */
+    static String decompress(byte[] compressed, int rawLength) {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        // 不带头尾的格式不会提示需要字典，解压前直接设置
+        inflater.setDictionary(DICTIONARY);
+        inflater.setInput(compressed);
+        byte[] raw = new byte[rawLength];
+        try {
+            int position = 0;
+            while (position < rawLength) {
+                int count = inflater.inflate(raw, position, rawLength - position);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                position += count;
+            }
+            if (position != rawLength) {
+                throw new IllegalStateException("压缩原文已损坏");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("压缩原文已损坏", e);
+        }
+        return MappingStore.decodeUtf8(raw, 0, raw.length);
+    }
+}
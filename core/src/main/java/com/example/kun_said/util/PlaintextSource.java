@@ -0,0 +1,26 @@
+package com.example.kun_said.util;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 按引用保存的原文来源，例如存储访问框架中的文件
+ * 映射中只保存来源本身，解密命中时才重新打开读取
+ */
+public interface PlaintextSource {
+    /**
+     * @return 新打开的原文读取器，由调用方负责关闭
+     */
+    Reader open() throws IOException;
+
+    /**
+     * 由标识重新得到原文来源，用于从持久化映射中恢复按引用保存的条目
+     */
+    interface Resolver {
+        /**
+         * @param sourceId 加密时记录的来源标识
+         * @return 原文来源，无法识别时返回null
+         */
+        PlaintextSource resolve(String sourceId);
+    }
+}
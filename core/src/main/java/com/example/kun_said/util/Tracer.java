@@ -0,0 +1,166 @@
+package com.example.kun_said.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 轻量追踪
+ * 事件保存在固定大小的环形缓冲区中，每条只有事件编号、时间戳、长度和结果码四个基本类型字段，
+ * 记录时不拼接字符串也不分配对象，只有导出时才格式化。关闭时记录只有一次volatile读。
+ * 只记录长度，不记录原文或凭证。
+ */
+public final class Tracer {
+    public static final int EVENT_ENCRYPT = 1;
+    public static final int EVENT_ENCRYPT_BATCH = 2;
+    public static final int EVENT_ENCRYPT_SOURCE = 3;
+    public static final int EVENT_DECRYPT = 4;
+    public static final int EVENT_DECRYPT_BATCH = 5;
+    public static final int EVENT_EXTRACT_KEY = 6;
+    public static final int EVENT_JOURNAL_RECOVER = 7;
+    public static final int EVENT_JOURNAL_COMPACT = 8;
+    public static final int EVENT_UI_ENCRYPT = 9;
+    public static final int EVENT_UI_ENCRYPT_FILE = 10;
+    public static final int EVENT_UI_DECRYPT = 11;
+    public static final int EVENT_UI_DETECT_KEY = 12;
+    public static final int EVENT_DECRYPT_DOCUMENT = 13;
+    public static final int EVENT_UI_DECRYPT_DOCUMENT = 14;
+
+    public static final int RESULT_OK = 0;
+    public static final int RESULT_MISS = 1;
+    public static final int RESULT_JOURNAL_HIT = 2;
+    public static final int RESULT_REJECTED = 3;
+    public static final int RESULT_FAILED = 4;
+
+    private static final String[] EVENT_NAMES = {
+            "?", "加密", "批量加密", "流式加密", "解密", "批量解密", "凭证提取",
+            "日志恢复", "日志压缩", "界面加密", "界面文件加密", "界面解密", "界面凭证检测",
+            "文档解密", "界面文档解密"
+    };
+    private static final String[] RESULT_NAMES = {"成功", "未命中", "磁盘命中", "已拒绝", "失败"};
+
+    // 容量必须是2的幂，下标用掩码计算
+    private static final int CAPACITY = 1024;
+    private static final int MASK = CAPACITY - 1;
+
+    private static volatile boolean enabled;
+
+    private static final AtomicLong next = new AtomicLong();
+    // 每个槽位写完后保存序号+1，写入过程中为0，导出时据此跳过被覆盖或未写完的槽位
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private static final long[] timestamps = new long[CAPACITY];
+    private static final int[] events = new int[CAPACITY];
+    private static final int[] lengths = new int[CAPACITY];
+    private static final int[] results = new int[CAPACITY];
+
+    private Tracer() {
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录一个事件
+     * @param event 事件编号，EVENT_*
+     * @param length 输入长度（字符数或条目数）
+     * @param result 结果码，RESULT_*
+     */
+    public static void record(int event, int length, int result) {
+        if (!enabled) {
+            return;
+        }
+        long sequence = next.getAndIncrement();
+        int slot = (int) (sequence & MASK);
+        sequences.set(slot, 0);
+        timestamps[slot] = System.nanoTime();
+        events[slot] = event;
+        lengths[slot] = length;
+        results[slot] = result;
+        sequences.lazySet(slot, sequence + 1);
+    }
+
+    /**
+     * 清空已记录的事件
+     */
+    public static void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            sequences.set(i, 0);
+        }
+    }
+
+    /**
+     * 按时间顺序把缓冲区中的事件格式化输出
+     * @param out 输出目标
+     */
+    public static void dump(Appendable out) throws IOException {
+        long end = next.get();
+        long begin = Math.max(0, end - CAPACITY);
+        long now = System.nanoTime();
+        int count = 0;
+        out.append("追踪导出时间: ")
+                .append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.CHINA).format(new Date()))
+                .append('\n');
+        for (long sequence = begin; sequence < end; sequence++) {
+            int slot = (int) (sequence & MASK);
+            if (sequences.get(slot) != sequence + 1) {
+                continue;
+            }
+            long timestamp = timestamps[slot];
+            int event = events[slot];
+            int length = lengths[slot];
+            int result = results[slot];
+            // 读取期间被新事件覆盖时丢弃
+            if (sequences.get(slot) != sequence + 1) {
+                continue;
+            }
+            out.append('#').append(Long.toString(sequence))
+                    .append(" -").append(Long.toString((now - timestamp) / 1000000)).append("ms ")
+                    .append(nameOf(EVENT_NAMES, event))
+                    .append(" 长度=").append(Integer.toString(length))
+                    .append(' ').append(nameOf(RESULT_NAMES, result))
+                    .append('\n');
+            count++;
+        }
+        out.append("共").append(Integer.toString(count)).append("条\n");
+    }
+
+    /**
+     * @return 格式化后的全部事件
+     */
+    public static String dump() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            dump(builder);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 把追踪导出到文本文件，用于调试
+     * @param file 目标文件，已存在时覆盖
+     */
+    public static void export(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            dump(writer);
+        }
+    }
+
+    private static String nameOf(String[] names, int index) {
+        return index >= 0 && index < names.length ? names[index] : Integer.toString(index);
+    }
+}
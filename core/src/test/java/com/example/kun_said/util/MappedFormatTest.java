@@ -0,0 +1,83 @@
+package com.example.kun_said.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 第一版密文格式的等价性测试：查表一次生成的密文与最初三次遍历的实现逐字节一致
+ */
+public class MappedFormatTest {
+    private static final String[] KUN_CHARS = {"只", "因", "你", "太", "美"};
+    private static final String KEY_CHARS = "坤曰凭证abcXYZ019 ，:😀";
+
+    @Test
+    public void formatMessage_matchesLegacyEncoder() {
+        Random random = new Random(12);
+        byte[] digest = new byte[32];
+        for (int i = 0; i < 100_000; i++) {
+            random.nextBytes(digest);
+            String key = randomText(random, 1 + random.nextInt(12));
+            assertEquals(legacyMessage(digest, key), EncryptionUtil.formatMessage(digest, key));
+        }
+    }
+
+    @Test
+    public void encrypt_matchesLegacyEncoderAndDecrypts() throws Exception {
+        Random random = new Random(21);
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        for (int i = 0; i < 2_000; i++) {
+            String content = randomText(random, random.nextInt(200));
+            String key = randomText(random, 1 + random.nextInt(12));
+            byte[] digest = sha256.digest((content + key).getBytes(StandardCharsets.UTF_8));
+
+            String encrypted = EncryptionUtil.encrypt(content, key);
+            assertEquals(legacyMessage(digest, key), encrypted);
+            assertEquals(content, EncryptionUtil.decrypt(encrypted, key));
+        }
+    }
+
+    // 最初的实现：摘要转十六进制串，逐位映射为"只因你太美"，再每5个字加一个空格
+    private static String legacyMessage(byte[] encryptedHash, String key) {
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : encryptedHash) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) hexString.append('0');
+            hexString.append(hex);
+        }
+        String hashText = hexString.toString();
+
+        StringBuilder encodedText = new StringBuilder();
+        int maxHashLength = Math.min(hashText.length(), 60);
+        for (int i = 0; i < maxHashLength; i++) {
+            encodedText.append(KUN_CHARS[(hashText.charAt(i) & 0x7) % 5]);
+        }
+
+        StringBuilder formattedResult = new StringBuilder();
+        String resultText = encodedText.toString();
+        for (int i = 0; i < resultText.length(); i++) {
+            formattedResult.append(resultText.charAt(i));
+            if ((i + 1) % 5 == 0 && i < resultText.length() - 1) {
+                formattedResult.append(" ");
+            }
+        }
+        return "坤曰：只因你太美，你我美积极，" + formattedResult + "，" + key;
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int kind = random.nextInt(4);
+            if (kind == 0) {
+                builder.append((char) (0x4e00 + random.nextInt(0x5000)));
+            } else {
+                builder.append(KEY_CHARS.charAt(random.nextInt(KEY_CHARS.length())));
+            }
+        }
+        return builder.toString();
+    }
+}
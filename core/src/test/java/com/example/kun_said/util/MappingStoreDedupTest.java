@@ -0,0 +1,159 @@
+package com.example.kun_said.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 原文去重的随机模型测试：模型按原文内容计数引用，
+ * 字节数只计算每种原文一次，淘汰、覆盖和删除都要正确减少引用
+ */
+public class MappingStoreDedupTest {
+    private static final int ROUNDS = 300;
+    private static final int OPERATIONS = 4_000;
+
+    @Test
+    public void refcountsAndBytes_matchDedupModel() {
+        Random random = new Random(11);
+        for (int round = 0; round < ROUNDS; round++) {
+            runRound(random, round);
+        }
+    }
+
+    @Test
+    public void sameMessageUnderManyKeys_isStoredOnce() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 250; i++) {
+            builder.append("广播消息");
+        }
+        String message = builder.toString();
+        long bytes = message.getBytes(StandardCharsets.UTF_8).length;
+        MappingStore store = new MappingStore(100_000, Long.MAX_VALUE / 4, 0, null);
+        for (int i = 0; i < 10_000; i++) {
+            store.put("key" + i, message);
+        }
+
+        MappingStore.Stats stats = store.stats();
+        assertEquals(10_000, stats.size);
+        assertEquals(1, stats.payloadCount);
+        assertEquals(bytes, stats.bytes);
+        assertEquals(9_999 * bytes, stats.dedupBytes);
+
+        for (int i = 0; i < 9_999; i++) {
+            store.remove("key" + i);
+        }
+        assertEquals(1, store.stats().payloadCount);
+        assertEquals(message, store.get("key9999"));
+        store.remove("key9999");
+        assertEquals(0, store.stats().payloadCount);
+        assertEquals(0, store.sizeInBytes());
+    }
+
+    private static void runRound(Random random, int round) {
+        int maxEntries = 1 + random.nextInt(300);
+        long maxBytes = 50 + random.nextInt(5000);
+        MappingStore store = new MappingStore(maxEntries, maxBytes, 0, null);
+        Model model = new Model();
+
+        String[] pool = new String[1 + random.nextInt(40)];
+        for (int p = 0; p < pool.length; p++) {
+            StringBuilder value = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int i = 0; i < length; i++) {
+                value.append((char) (random.nextBoolean() ? 'a' + random.nextInt(26) : 0x4e00 + random.nextInt(500)));
+            }
+            if (random.nextInt(10) == 0) {
+                value.append("😀");
+            }
+            pool[p] = value.toString();
+        }
+
+        for (int op = 0; op < OPERATIONS; op++) {
+            String where = "round " + round + " op " + op;
+            String key = "k" + random.nextInt(maxEntries * 2);
+            int choice = random.nextInt(12);
+            if (choice < 5) {
+                String value = pool[random.nextInt(pool.length)];
+                store.put(key, value);
+                model.put(key, value);
+                model.trim(maxEntries, maxBytes);
+            } else if (choice < 9) {
+                assertEquals(where, model.entries.get(key), store.get(key));
+            } else if (choice < 11) {
+                assertEquals(where, model.remove(key), store.remove(key));
+            } else if (random.nextInt(20) == 0) {
+                store.trimMemory(MappingStore.TRIM_MEMORY_UI_HIDDEN);
+                // 界面不可见时收缩到四分之三
+                model.trim(model.entries.size() * 3L / 4, model.uniqueBytes * 3 / 4);
+            }
+
+            MappingStore.Stats stats = store.stats();
+            assertEquals(where, model.entries.size(), stats.size);
+            assertEquals(where, model.uniqueBytes, stats.bytes);
+            assertEquals(where, model.evictions, stats.evictionCount);
+            assertEquals(where, model.refs.size(), stats.payloadCount);
+            assertEquals(where, model.logicalBytes - model.uniqueBytes, stats.dedupBytes);
+        }
+        for (Map.Entry<String, String> entry : model.entries.entrySet()) {
+            assertEquals(entry.getValue(), store.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * 参照模型：访问顺序的LinkedHashMap加按原文内容的引用计数
+     */
+    private static final class Model {
+        final LinkedHashMap<String, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+        final HashMap<String, Integer> refs = new HashMap<>();
+        long uniqueBytes;
+        long logicalBytes;
+        long evictions;
+
+        void put(String key, String value) {
+            String previous = entries.put(key, value);
+            if (previous != null) {
+                release(previous);
+            }
+            logicalBytes += bytes(value);
+            if (refs.merge(value, 1, Integer::sum) == 1) {
+                uniqueBytes += bytes(value);
+            }
+        }
+
+        boolean remove(String key) {
+            String previous = entries.remove(key);
+            if (previous != null) {
+                release(previous);
+            }
+            return previous != null;
+        }
+
+        void trim(long entryLimit, long byteLimit) {
+            Iterator<Map.Entry<String, String>> iterator = entries.entrySet().iterator();
+            while ((entries.size() > entryLimit || uniqueBytes > byteLimit) && iterator.hasNext()) {
+                release(iterator.next().getValue());
+                iterator.remove();
+                evictions++;
+            }
+        }
+
+        private void release(String value) {
+            logicalBytes -= bytes(value);
+            if (refs.merge(value, -1, Integer::sum) == 0) {
+                refs.remove(value);
+                uniqueBytes -= bytes(value);
+            }
+        }
+
+        private static long bytes(String value) {
+            return value.getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+}
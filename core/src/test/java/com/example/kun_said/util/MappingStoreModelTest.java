@@ -0,0 +1,178 @@
+package com.example.kun_said.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 映射存储的随机模型测试：以插入顺序的LinkedHashMap为模型，
+ * 随机执行写入、批量写入、查询、批量查询、删除、推进时钟和清理过期，
+ * 每一步都对比查询结果、条目数和命中、未命中、淘汰、过期计数
+ */
+public class MappingStoreModelTest {
+    private static final int ROUNDS = 200;
+    private static final int OPERATIONS = 3_000;
+
+    @Test
+    public void lruAndTtl_matchLinkedHashMapModel() {
+        Random random = new Random(13);
+        for (int round = 0; round < ROUNDS; round++) {
+            runRound(random, round);
+        }
+    }
+
+    private static void runRound(Random random, int round) {
+        int maxEntries = 1 + random.nextInt(64);
+        long ttl = random.nextBoolean() ? 0 : 1 + random.nextInt(50);
+        long[] now = {1_000};
+        // 字节数限额足够大，只由条目数触发淘汰；字节数的淘汰见MappingStoreDedupTest
+        MappingStore store = new MappingStore(maxEntries, Long.MAX_VALUE / 4, ttl, null, () -> now[0]);
+        Model model = new Model(maxEntries, ttl);
+        String[] values = {"", "只因你太美", "坤曰", "a", "你我美积极", "😀", "\ud800"};
+
+        for (int op = 0; op < OPERATIONS; op++) {
+            String where = "round " + round + " op " + op;
+            String key = "k" + random.nextInt(maxEntries * 2);
+            int choice = random.nextInt(20);
+            if (choice < 6) {
+                String value = values[random.nextInt(values.length)] + random.nextInt(4);
+                store.put(key, value);
+                model.put(key, value, now[0]);
+            } else if (choice < 8) {
+                int count = 1 + random.nextInt(8);
+                String[] keys = new String[count];
+                List<String> batch = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    keys[i] = random.nextInt(5) == 0 ? null : "k" + random.nextInt(maxEntries * 2);
+                    batch.add(values[random.nextInt(values.length)]);
+                }
+                store.putAll(keys, batch);
+                model.putAll(keys, batch, now[0]);
+            } else if (choice < 13) {
+                assertEquals(where, model.get(key, now[0]), store.get(key));
+            } else if (choice < 15) {
+                String[] keys = new String[1 + random.nextInt(6)];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = random.nextInt(5) == 0 ? null : "k" + random.nextInt(maxEntries * 2);
+                }
+                Object[] found = store.getAll(keys);
+                for (int i = 0; i < keys.length; i++) {
+                    assertEquals(where, keys[i] == null ? null : model.get(keys[i], now[0]), found[i]);
+                }
+            } else if (choice < 17) {
+                assertEquals(where, model.remove(key), store.remove(key));
+            } else if (choice < 19) {
+                now[0] += random.nextInt(20);
+            } else {
+                store.purgeExpired();
+                model.purgeExpired(now[0]);
+            }
+
+            MappingStore.Stats stats = store.stats();
+            assertEquals(where, model.entries.size(), stats.size);
+            assertEquals(where, model.hits, stats.hitCount);
+            assertEquals(where, model.misses, stats.missCount);
+            assertEquals(where, model.evictions, stats.evictionCount);
+            assertEquals(where, model.expirations, stats.expiredCount);
+        }
+    }
+
+    /**
+     * 参照模型：最久未使用的条目在最前，访问时移到末尾
+     */
+    private static final class Model {
+        final int maxEntries;
+        final long ttl;
+        final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+        long hits;
+        long misses;
+        long evictions;
+        long expirations;
+
+        Model(int maxEntries, long ttl) {
+            this.maxEntries = maxEntries;
+            this.ttl = ttl;
+        }
+
+        void put(String key, String value, long now) {
+            insert(key, value, now);
+            trim();
+        }
+
+        void putAll(String[] keys, List<String> values, long now) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    insert(keys[i], values.get(i), now);
+                }
+            }
+            trim();
+        }
+
+        String get(String key, long now) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            if (entry.isExpired(now)) {
+                entries.remove(key);
+                expirations++;
+                misses++;
+                return null;
+            }
+            hits++;
+            entries.remove(key);
+            entries.put(key, entry);
+            return entry.value;
+        }
+
+        boolean remove(String key) {
+            return entries.remove(key) != null;
+        }
+
+        void purgeExpired(long now) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().isExpired(now)) {
+                    iterator.remove();
+                    expirations++;
+                }
+            }
+        }
+
+        private void insert(String key, String value, long now) {
+            entries.remove(key);
+            entries.put(key, new Entry(value, ttl > 0 ? now + ttl : 0));
+        }
+
+        private void trim() {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (entries.size() > maxEntries) {
+                iterator.next();
+                iterator.remove();
+                evictions++;
+            }
+        }
+    }
+
+    private static final class Entry {
+        final String value;
+        final long expiresAt;
+
+        Entry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt != 0 && expiresAt <= now;
+        }
+    }
+}
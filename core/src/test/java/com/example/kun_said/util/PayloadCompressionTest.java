@@ -0,0 +1,100 @@
+package com.example.kun_said.util;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 长原文压缩的往返测试：压缩后解压得到原样的文本，字节区整理移动压缩原文后仍能正确读取
+ */
+public class PayloadCompressionTest {
+    private static final String WORDS = "今天我们在公司开会讨论了项目的进度问题大家觉得应该加快速度"
+            + "但是因为需求还没有确定所以只能先做准备工作，。只因你太美abc 😀";
+
+    @Test
+    public void codec_roundTripsRandomText() {
+        Random random = new Random(20);
+        for (int i = 0; i < 2_000; i++) {
+            String text = randomText(random, random.nextInt(5_000));
+            byte[] raw = MappingStore.encodeUtf8(text);
+            byte[] compressed = PayloadCodec.compress(raw);
+            if (compressed == null) {
+                continue;
+            }
+            assertTrue(compressed.length < raw.length);
+            assertEquals(text, PayloadCodec.decompress(compressed, raw.length));
+        }
+    }
+
+    @Test
+    public void codec_keepsIncompressibleBytes() {
+        byte[] raw = new byte[4_096];
+        new Random(2).nextBytes(raw);
+        assertNull(PayloadCodec.compress(raw));
+    }
+
+    @Test
+    public void store_compressesLongTextAndKeepsShortTextRaw() {
+        String longText = randomText(new Random(1), 3_000);
+        MappingStore store = new MappingStore(1_000, 1 << 24, 0, Runnable::run);
+        store.put("k1", longText);
+        store.put("k2", longText);
+        store.put("small", "只因你太美");
+
+        MappingStore.Stats stats = store.stats();
+        assertEquals(1, stats.compressedCount);
+        assertTrue(stats.compressionBytes > 0);
+        assertEquals(longText, store.get("k1"));
+        assertEquals(longText, store.get("k2"));
+        assertEquals("只因你太美", store.get("small"));
+    }
+
+    @Test
+    public void store_roundTripsThroughEvictionAndArenaCompaction() {
+        Random random = new Random(200);
+        for (int round = 0; round < 50; round++) {
+            MappingStore store = new MappingStore(50, 200_000, 0, Runnable::run);
+            LinkedHashMap<String, String> model = new LinkedHashMap<>();
+            for (int op = 0; op < 2_000; op++) {
+                String key = "k" + random.nextInt(80);
+                if (random.nextInt(3) == 0) {
+                    String value = randomText(random, random.nextInt(3_000));
+                    store.put(key, value);
+                    model.put(key, value);
+                } else {
+                    String found = store.get(key);
+                    if (found == null) {
+                        // 被淘汰的条目不再出现
+                        model.remove(key);
+                    } else {
+                        assertEquals("round " + round + " op " + op, model.get(key), found);
+                    }
+                }
+                if (random.nextInt(200) == 0) {
+                    store.trimMemory(MappingStore.TRIM_MEMORY_BACKGROUND);
+                }
+            }
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int kind = random.nextInt(8);
+            if (kind == 0) {
+                builder.append((char) (0x4e00 + random.nextInt(50)));
+            } else if (kind == 1 && random.nextInt(50) == 0) {
+                // 偶尔出现不成对的代理字符
+                builder.append((char) (0xd800 + random.nextInt(0x800)));
+            } else {
+                builder.append(WORDS.charAt(random.nextInt(WORDS.length())));
+            }
+        }
+        return builder.toString();
+    }
+}
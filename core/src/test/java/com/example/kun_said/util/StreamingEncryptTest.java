@@ -0,0 +1,68 @@
+package com.example.kun_said.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * 流式加密的测试：结果与整体加密一致，读取中途失败不影响同一线程之后的加密
+ */
+public class StreamingEncryptTest {
+
+    @Test
+    public void streamedEncrypt_matchesWholeTextEncrypt() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            builder.append("只因你太美").append(i).append('\n');
+        }
+        String content = builder.toString();
+
+        String streamed = EncryptionUtil.encrypt(new StringReader(content), "凭证", () -> new StringReader(content));
+
+        assertEquals(EncryptionUtil.encrypt(content, "凭证"), streamed);
+        assertEquals(content, EncryptionUtil.decrypt(streamed, "凭证"));
+    }
+
+    @Test
+    public void failedStream_doesNotLeakIntoNextEncrypt() {
+        String expected = EncryptionUtil.encrypt("hello", "k");
+        try {
+            EncryptionUtil.encrypt(new FailingReader("读取到一半的原文"), "k", () -> new StringReader(""));
+            fail("读取失败应当抛出");
+        } catch (IOException expectedFailure) {
+            // 模拟来源文件在读取中途不可用
+        }
+
+        assertEquals(expected, EncryptionUtil.encrypt("hello", "k"));
+        assertEquals("hello", EncryptionUtil.decrypt(expected, "k"));
+    }
+
+    /**
+     * 先返回一段内容，再次读取时抛出异常
+     */
+    private static final class FailingReader extends Reader {
+        private final Reader prefix;
+
+        FailingReader(String prefix) {
+            this.prefix = new StringReader(prefix);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int count = prefix.read(buffer, offset, length);
+            if (count < 0) {
+                throw new IOException("来源不可读");
+            }
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -21,4 +21,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "kun_said"
 include(":app")
- 
\ No newline at end of file
+include(":core")
+include(":cli")
+include(":benchmark")
@@ -0,0 +1,62 @@
+package com.example.kun_said;
+
+import android.app.Application;
+import android.content.pm.ApplicationInfo;
+
+import com.example.kun_said.settings.SettingsRepository;
+import com.example.kun_said.share.ResultShare;
+import com.example.kun_said.util.EncryptionUtil;
+import com.example.kun_said.util.Tracer;
+import com.example.kun_said.work.DocumentSource;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 应用入口
+ * 启动时打开持久化映射，并在后台线程读取设置、预热加密路径，
+ * 使页面创建时没有磁盘读写，第一次加密也不再承担类加载和算法查找的开销。
+ */
+public class KunApplication extends Application {
+    private static final CountDownLatch warmedUp = new CountDownLatch(1);
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // 调试版本默认记录追踪，发布版本在诊断信息中打开
+        Tracer.setEnabled((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+
+        // 打开持久化的加密映射，重启后仍可解密；日志恢复本身在后台进行
+        EncryptionUtil.init(getFilesDir());
+        // 按引用加密的文件重启后通过URI重新打开
+        EncryptionUtil.setSourceResolver(DocumentSource.resolver(this));
+
+        // 设置在自己的后台线程读取
+        SettingsRepository.get(this);
+
+        Thread warmUp = new Thread(() -> {
+            EncryptionUtil.warmUp();
+            warmedUp.countDown();
+            // 清理过期的分享缓存文件
+            ResultShare.cleanUp(this);
+        }, "kun-warmup");
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // 内存紧张时收缩加密映射
+        EncryptionUtil.onTrimMemory(level);
+    }
+
+    /**
+     * 等待启动预热完成，用于测试
+     * @return 在超时之前完成时返回true
+     */
+    public static boolean awaitWarmUp(long timeout, TimeUnit unit) throws InterruptedException {
+        return warmedUp.await(timeout, unit);
+    }
+}
@@ -1,14 +1,7 @@
 package com.example.kun_said.fragments;
 
-import android.content.ClipData;
-import android.content.ClipboardManager;
-import android.content.Context;
-import android.content.SharedPreferences;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.text.TextUtils;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -18,28 +11,40 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
-import androidx.preference.PreferenceManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.kun_said.R;
-import com.example.kun_said.util.EncryptionUtil;
+import com.example.kun_said.settings.SettingsRepository;
+import com.example.kun_said.share.ResultShare;
+import com.example.kun_said.util.EncryptionEngine;
+import com.example.kun_said.util.Tracer;
 import com.google.android.material.textfield.TextInputEditText;
 
 import java.util.Objects;
 
 public class DecryptFragment extends Fragment {
-    private static final String TAG = "DecryptFragment";
     private TextInputEditText etEncryptedContent;
     private TextInputEditText etDecryptKey;
     private Button btnAutoDetect;
     private Button btnDecrypt;
+    private Button btnDecryptDocument;
     private Button btnCopy;
+    private Button btnShare;
     private TextView tvDecryptProcessTitle;
     private TextView tvDecryptProcess;
     private TextView tvResultTitle;
-    private TextView tvResult;
-    private Handler handler;
+    private RecyclerView rvResult;
+    private ResultViewer resultViewer;
+    private ProcessAnimator processAnimator;
+    // 后台已算出、等待动画播放完才显示的结果
+    private String pendingResult;
     private boolean animationEnabled = true;
+    private EncryptionEngine.Job currentJob;
+    private EncryptionEngine.Job detectJob;
+    private final SettingsRepository.Listener settingsListener =
+            settings -> animationEnabled = settings.animationEnabled;
 
     @Nullable
     @Override
@@ -52,8 +57,17 @@ public class DecryptFragment extends Fragment {
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
-        loadPreferences();
         setupListeners();
+        SettingsRepository.get(requireContext()).addListener(settingsListener);
+    }
+
+    @Override
+    public void onDestroyView() {
+        // 视图销毁后不再执行后台任务和动画回调
+        SettingsRepository.get(requireContext()).removeListener(settingsListener);
+        cancelJobs();
+        processAnimator.cancel();
+        super.onDestroyView();
     }
 
     private void initViews(View view) {
@@ -61,23 +75,25 @@ public class DecryptFragment extends Fragment {
         etDecryptKey = view.findViewById(R.id.et_decrypt_key);
         btnAutoDetect = view.findViewById(R.id.btn_auto_detect);
         btnDecrypt = view.findViewById(R.id.btn_decrypt);
+        btnDecryptDocument = view.findViewById(R.id.btn_decrypt_document);
         btnCopy = view.findViewById(R.id.btn_copy);
+        btnShare = view.findViewById(R.id.btn_share);
         tvDecryptProcessTitle = view.findViewById(R.id.tv_decrypt_process_title);
         tvDecryptProcess = view.findViewById(R.id.tv_decrypt_process);
         tvResultTitle = view.findViewById(R.id.tv_result_title);
-        tvResult = view.findViewById(R.id.tv_result);
-        handler = new Handler(Looper.getMainLooper());
-    }
-
-    private void loadPreferences() {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(requireContext());
-        animationEnabled = prefs.getBoolean("animation_enabled", true);
+        rvResult = view.findViewById(R.id.rv_result);
+        resultViewer = new ResultViewer(rvResult);
+        processAnimator = new ProcessAnimator(tvDecryptProcess);
     }
 
     private void setupListeners() {
         btnAutoDetect.setOnClickListener(v -> autoDetectKey());
         btnDecrypt.setOnClickListener(v -> startDecryption());
-        btnCopy.setOnClickListener(v -> copyResultToClipboard());
+        btnDecryptDocument.setOnClickListener(v -> startDocumentDecryption());
+        btnCopy.setOnClickListener(v -> ResultShare.copyToClipboard(this, "解密结果", resultViewer.getText()));
+        btnShare.setOnClickListener(v -> ResultShare.share(this, "解密结果", resultViewer.getText()));
+        // 点击过程区域跳过动画，结果已经算好时立即显示
+        tvDecryptProcess.setOnClickListener(v -> processAnimator.skip());
     }
 
     private void autoDetectKey() {
@@ -87,16 +103,23 @@ public class DecryptFragment extends Fragment {
             return;
         }
 
-        // 使用工具类提取加密凭证
-        String key = EncryptionUtil.extractKey(encryptedContent);
-        Log.d(TAG, "自动检测到的凭证: " + key);
-        
-        if (key != null) {
-            etDecryptKey.setText(key);
-            Toast.makeText(requireContext(), "已自动识别加密凭证", Toast.LENGTH_SHORT).show();
-        } else {
-            Toast.makeText(requireContext(), "无法识别加密凭证，请手动输入", Toast.LENGTH_SHORT).show();
+        // 在后台提取加密凭证
+        if (detectJob != null) {
+            detectJob.cancel();
         }
+        detectJob = EncryptionEngine.shared().extractKey(encryptedContent,
+                ContextCompat.getMainExecutor(requireContext()), key -> {
+                    detectJob = null;
+                    Tracer.record(Tracer.EVENT_UI_DETECT_KEY, encryptedContent.length(),
+                            key != null ? Tracer.RESULT_OK : Tracer.RESULT_REJECTED);
+
+                    if (key != null) {
+                        etDecryptKey.setText(key);
+                        Toast.makeText(requireContext(), "已自动识别加密凭证", Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(requireContext(), "无法识别加密凭证，请手动输入", Toast.LENGTH_SHORT).show();
+                    }
+                });
     }
 
     private void startDecryption() {
@@ -113,30 +136,84 @@ public class DecryptFragment extends Fragment {
             return;
         }
 
-        Log.d(TAG, "开始解密: 内容=" + encryptedContent + ", 凭证=" + decryptKey);
+        Tracer.record(Tracer.EVENT_UI_DECRYPT, encryptedContent.length(), Tracer.RESULT_OK);
         
-        // 执行解密
+        // 解密立即在后台开始，动画只负责展示过程，两者都完成后显示结果
         if (animationEnabled) {
             showDecryptionAnimation(encryptedContent, decryptKey);
         } else {
-            String decryptedContent = EncryptionUtil.decrypt(encryptedContent, decryptKey);
-            Log.d(TAG, "解密结果: " + decryptedContent);
-            showResult(decryptedContent);
+            hideProcess();
         }
+        runDecryption(encryptedContent, decryptKey);
+    }
+
+    // 文档中可能夹杂多段密文和普通文字，每段密文使用自带的凭证，不播放动画
+    private void startDocumentDecryption() {
+        String document = Objects.requireNonNull(etEncryptedContent.getText()).toString();
+        if (TextUtils.isEmpty(document.trim())) {
+            etEncryptedContent.setError("请输入需要解密的内容");
+            return;
+        }
+        Tracer.record(Tracer.EVENT_UI_DECRYPT_DOCUMENT, document.length(), Tracer.RESULT_OK);
+
+        cancelJobs();
+        hideProcess();
+        currentJob = EncryptionEngine.shared().decryptDocument(document,
+                ContextCompat.getMainExecutor(requireContext()), decryptedDocument -> {
+                    currentJob = null;
+                    showResult(decryptedDocument);
+                });
+    }
+
+    private void runDecryption(String content, String key) {
+        if (currentJob != null) {
+            currentJob.cancel();
+        }
+        pendingResult = null;
+        currentJob = EncryptionEngine.shared().decrypt(content, key,
+                ContextCompat.getMainExecutor(requireContext()), decryptedContent -> {
+                    currentJob = null;
+                    pendingResult = decryptedContent;
+                    showResultWhenReady();
+                });
+    }
+
+    private void showResultWhenReady() {
+        if (pendingResult != null && !processAnimator.isPlaying()) {
+            showResult(pendingResult);
+            pendingResult = null;
+        }
+    }
+
+    private void hideProcess() {
+        processAnimator.cancel();
+        tvDecryptProcessTitle.setVisibility(View.GONE);
+        tvDecryptProcess.setVisibility(View.GONE);
+    }
+
+    private void cancelJobs() {
+        if (currentJob != null) {
+            currentJob.cancel();
+            currentJob = null;
+        }
+        if (detectJob != null) {
+            detectJob.cancel();
+            detectJob = null;
+        }
+        pendingResult = null;
     }
 
     private void showDecryptionAnimation(String content, String key) {
         // 显示解密过程
         tvDecryptProcessTitle.setVisibility(View.VISIBLE);
         tvDecryptProcess.setVisibility(View.VISIBLE);
-        tvDecryptProcess.setText("");
 
         final String[] steps = {
-                "1. 读取加密内容: " + content,
+                "1. 读取加密内容: " + ProcessAnimator.excerpt(content),
                 "2. 提取加密格式...",
                 "3. 验证格式是否符合'坤曰：只因你太美，你我美积极，...，凭证'",
                 "4. 提取加密文本部分（由'只因你太美'组成的文本）...",
-                "5. 提取加密凭证: " + key,
+                "5. 提取加密凭证: " + ProcessAnimator.excerpt(key),
                 "6. 验证凭证是否匹配...",
                 "7. 分析'只因你太美'编码模式...",
                 "8. 字符'只': 11100111 10101001",
@@ -149,33 +226,15 @@ public class DecryptFragment extends Fragment {
                 "15. 解密完成！"
         };
 
-        for (int i = 0; i < steps.length; i++) {
-            final int stepIndex = i;
-            handler.postDelayed(() -> {
-                tvDecryptProcess.append(steps[stepIndex] + "\n");
-                // 最后一步完成后显示结果
-                if (stepIndex == steps.length - 1) {
-                    String decryptedContent = EncryptionUtil.decrypt(content, key);
-                    Log.d(TAG, "动画结束后解密结果: " + decryptedContent);
-                    showResult(decryptedContent);
-                }
-            }, i * 300); // 每步延迟300毫秒
-        }
+        // 每步间隔300毫秒
+        processAnimator.play(steps, 300, this::showResultWhenReady);
     }
 
     private void showResult(String result) {
         tvResultTitle.setVisibility(View.VISIBLE);
-        tvResult.setVisibility(View.VISIBLE);
-        tvResult.setText(result);
+        rvResult.setVisibility(View.VISIBLE);
+        resultViewer.show(result);
         btnCopy.setVisibility(View.VISIBLE);
-        Log.d(TAG, "显示解密结果: " + result);
-    }
-
-    private void copyResultToClipboard() {
-        String result = tvResult.getText().toString();
-        ClipboardManager clipboard = (ClipboardManager) requireContext().getSystemService(Context.CLIPBOARD_SERVICE);
-        ClipData clip = ClipData.newPlainText("解密结果", result);
-        clipboard.setPrimaryClip(clip);
-        Toast.makeText(requireContext(), "已复制到剪贴板", Toast.LENGTH_SHORT).show();
+        btnShare.setVisibility(View.VISIBLE);
     }
 } 
\ No newline at end of file
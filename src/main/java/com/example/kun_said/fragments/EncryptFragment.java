@@ -1,13 +1,12 @@
 package com.example.kun_said.fragments;
 
-import android.content.ClipData;
-import android.content.ClipboardManager;
-import android.content.Context;
-import android.content.SharedPreferences;
+import android.content.ContentResolver;
+import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -16,30 +15,71 @@ import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
-import androidx.preference.PreferenceManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.work.Data;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
 
 import com.example.kun_said.R;
+import com.example.kun_said.settings.SettingsRepository;
+import com.example.kun_said.share.ResultShare;
+import com.example.kun_said.util.EncryptionEngine;
 import com.example.kun_said.util.EncryptionUtil;
+import com.example.kun_said.util.LivePreview;
+import com.example.kun_said.util.Tracer;
+import com.example.kun_said.work.BulkEncryptWorker;
+import com.example.kun_said.work.DocumentSource;
 import com.google.android.material.textfield.TextInputEditText;
 
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class EncryptFragment extends Fragment {
     private static final String TAG = "EncryptFragment";
+    // 停止输入多久之后才计算预览
+    private static final long PREVIEW_DEBOUNCE_MILLIS = 200;
     private TextInputEditText etOriginalContent;
     private TextInputEditText etEncryptKey;
     private Button btnEncrypt;
+    private Button btnEncryptFile;
+    private Button btnEncryptFolder;
+    private TextView tvBulkStatus;
     private Button btnCopy;
+    private Button btnShare;
     private TextView tvEncryptProcessTitle;
     private TextView tvEncryptProcess;
     private TextView tvResultTitle;
-    private TextView tvResult;
-    private Handler handler;
+    private RecyclerView rvResult;
+    private ResultViewer resultViewer;
+    private TextView tvLivePreview;
+    private ProcessAnimator processAnimator;
+    // 预览的摘要缓存只在previewExecutor的线程上使用，只计算密文不写入映射存储
+    private LivePreview livePreview;
+    private ExecutorService previewExecutor;
+    // 每次输入变化加一，过期的预览请求直接跳过，过期的结果不显示
+    private final AtomicInteger previewGeneration = new AtomicInteger();
+    private final Runnable previewRunnable = this::startPreview;
+    private final SettingsRepository.Listener settingsListener = this::applySettings;
+    // 后台已算出、等待动画播放完才显示的结果
+    private String pendingResult;
     private boolean animationEnabled = true;
+    private int codecVersion = EncryptionUtil.VERSION_MAPPED;
     private String lastEncryptedContent = null;
+    private EncryptionEngine.Job currentJob;
+    private final ActivityResultLauncher<String[]> openDocumentLauncher =
+            registerForActivityResult(new ActivityResultContracts.OpenDocument(), this::onDocumentPicked);
+    private final ActivityResultLauncher<Uri> openTreeLauncher =
+            registerForActivityResult(new ActivityResultContracts.OpenDocumentTree(), this::onTreePicked);
 
     @Nullable
     @Override
@@ -52,30 +92,114 @@ public class EncryptFragment extends Fragment {
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
-        loadPreferences();
+        previewExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kun-preview");
+            thread.setDaemon(true);
+            return thread;
+        });
+        livePreview = new LivePreview();
         setupListeners();
+        SettingsRepository.get(requireContext()).addListener(settingsListener);
+        observeBulkWork();
+    }
+
+    @Override
+    public void onDestroyView() {
+        // 视图销毁后不再执行后台任务和动画回调
+        SettingsRepository.get(requireContext()).removeListener(settingsListener);
+        cancelCurrentJob();
+        processAnimator.cancel();
+        etOriginalContent.removeCallbacks(previewRunnable);
+        previewGeneration.incrementAndGet();
+        previewExecutor.shutdownNow();
+        super.onDestroyView();
     }
 
     private void initViews(View view) {
         etOriginalContent = view.findViewById(R.id.et_original_content);
         etEncryptKey = view.findViewById(R.id.et_encrypt_key);
         btnEncrypt = view.findViewById(R.id.btn_encrypt);
+        btnEncryptFile = view.findViewById(R.id.btn_encrypt_file);
+        btnEncryptFolder = view.findViewById(R.id.btn_encrypt_folder);
+        tvBulkStatus = view.findViewById(R.id.tv_bulk_status);
         btnCopy = view.findViewById(R.id.btn_copy);
+        btnShare = view.findViewById(R.id.btn_share);
         tvEncryptProcessTitle = view.findViewById(R.id.tv_encrypt_process_title);
         tvEncryptProcess = view.findViewById(R.id.tv_encrypt_process);
         tvResultTitle = view.findViewById(R.id.tv_result_title);
-        tvResult = view.findViewById(R.id.tv_result);
-        handler = new Handler(Looper.getMainLooper());
+        rvResult = view.findViewById(R.id.rv_result);
+        resultViewer = new ResultViewer(rvResult);
+        tvLivePreview = view.findViewById(R.id.tv_live_preview);
+        processAnimator = new ProcessAnimator(tvEncryptProcess);
     }
 
-    private void loadPreferences() {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(requireContext());
-        animationEnabled = prefs.getBoolean("animation_enabled", true);
+    private void applySettings(SettingsRepository.Settings settings) {
+        animationEnabled = settings.animationEnabled;
+        int version = settings.codecVersion();
+        if (version != codecVersion) {
+            codecVersion = version;
+            // 编码版本变化后预览也要更新
+            schedulePreview();
+        }
     }
 
     private void setupListeners() {
         btnEncrypt.setOnClickListener(v -> startEncryption());
-        btnCopy.setOnClickListener(v -> copyResultToClipboard());
+        btnEncryptFile.setOnClickListener(v -> startFileEncryption());
+        btnEncryptFolder.setOnClickListener(v -> startFolderEncryption());
+        btnCopy.setOnClickListener(v -> ResultShare.copyToClipboard(this, "加密结果", resultViewer.getText()));
+        btnShare.setOnClickListener(v -> ResultShare.share(this, "加密结果", resultViewer.getText()));
+        // 点击过程区域跳过动画，结果已经算好时立即显示
+        tvEncryptProcess.setOnClickListener(v -> processAnimator.skip());
+        // 原文或凭证变化后重新计算预览
+        TextWatcher previewWatcher = new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                schedulePreview();
+            }
+        };
+        etOriginalContent.addTextChangedListener(previewWatcher);
+        etEncryptKey.addTextChangedListener(previewWatcher);
+    }
+
+    private void schedulePreview() {
+        previewGeneration.incrementAndGet();
+        etOriginalContent.removeCallbacks(previewRunnable);
+        etOriginalContent.postDelayed(previewRunnable, PREVIEW_DEBOUNCE_MILLIS);
+    }
+
+    private void startPreview() {
+        String originalContent = Objects.requireNonNull(etOriginalContent.getText()).toString().trim();
+        String encryptKey = Objects.requireNonNull(etEncryptKey.getText()).toString().trim();
+        int generation = previewGeneration.incrementAndGet();
+        if (TextUtils.isEmpty(originalContent) || TextUtils.isEmpty(encryptKey)) {
+            tvLivePreview.setVisibility(View.GONE);
+            return;
+        }
+
+        int version = codecVersion;
+        LivePreview preview = livePreview;
+        Executor mainExecutor = ContextCompat.getMainExecutor(requireContext());
+        previewExecutor.execute(() -> {
+            if (generation != previewGeneration.get()) {
+                return;
+            }
+            String encrypted = preview.preview(originalContent, encryptKey, version);
+            mainExecutor.execute(() -> {
+                if (generation == previewGeneration.get()) {
+                    tvLivePreview.setVisibility(View.VISIBLE);
+                    tvLivePreview.setText("预览：" + encrypted);
+                }
+            });
+        });
     }
 
     private void startEncryption() {
@@ -92,28 +216,172 @@ public class EncryptFragment extends Fragment {
             return;
         }
 
-        Log.d(TAG, "开始加密: 原文=" + originalContent + ", 凭证=" + encryptKey);
+        Tracer.record(Tracer.EVENT_UI_ENCRYPT, originalContent.length(), Tracer.RESULT_OK);
 
-        // 执行加密
+        // 加密立即在后台开始，动画只负责展示过程，两者都完成后显示结果
         if (animationEnabled) {
             showEncryptionAnimation(originalContent, encryptKey);
         } else {
-            String encryptedContent = EncryptionUtil.encrypt(originalContent, encryptKey);
-            Log.d(TAG, "加密结果: " + encryptedContent);
-            lastEncryptedContent = encryptedContent;
-            showResult(encryptedContent);
+            hideProcess();
+        }
+        runEncryption(originalContent, encryptKey);
+    }
+
+    private void startFileEncryption() {
+        String encryptKey = Objects.requireNonNull(etEncryptKey.getText()).toString().trim();
+        if (TextUtils.isEmpty(encryptKey)) {
+            etEncryptKey.setError("请输入加密凭证");
+            return;
+        }
+        openDocumentLauncher.launch(new String[]{"text/*"});
+    }
+
+    private void onDocumentPicked(@Nullable Uri uri) {
+        String encryptKey = Objects.requireNonNull(etEncryptKey.getText()).toString().trim();
+        if (uri == null || TextUtils.isEmpty(encryptKey)) {
+            return;
+        }
+
+        // 保留读取权限，之后解密时需要重新读取原文
+        ContentResolver resolver = requireContext().getApplicationContext().getContentResolver();
+        try {
+            resolver.takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException e) {
+            Log.w(TAG, "无法保留文件读取权限", e);
+        }
+        DocumentSource source = new DocumentSource(requireContext(), uri);
+
+        Tracer.record(Tracer.EVENT_UI_ENCRYPT_FILE, 0, Tracer.RESULT_OK);
+        cancelCurrentJob();
+        hideProcess();
+        // 与文本加密一样使用设置中的编码版本
+        currentJob = EncryptionEngine.shared().encryptSource(source.id(), source, encryptKey, codecVersion,
+                ContextCompat.getMainExecutor(requireContext()), encryptedContent -> {
+                    currentJob = null;
+                    lastEncryptedContent = encryptedContent;
+                    showResult(encryptedContent);
+                });
+    }
+
+    private void startFolderEncryption() {
+        String encryptKey = Objects.requireNonNull(etEncryptKey.getText()).toString().trim();
+        if (TextUtils.isEmpty(encryptKey)) {
+            etEncryptKey.setError("请输入加密凭证");
+            return;
+        }
+        openTreeLauncher.launch(null);
+    }
+
+    private void onTreePicked(@Nullable Uri treeUri) {
+        String encryptKey = Objects.requireNonNull(etEncryptKey.getText()).toString().trim();
+        if (treeUri == null || TextUtils.isEmpty(encryptKey)) {
+            return;
+        }
+
+        // 保留目录读写权限，任务在进程重启后恢复时仍需访问
+        ContentResolver resolver = requireContext().getApplicationContext().getContentResolver();
+        try {
+            resolver.takePersistableUriPermission(treeUri,
+                    Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
+        } catch (SecurityException e) {
+            Log.w(TAG, "无法保留目录访问权限", e);
+        }
+        if (!BulkEncryptWorker.enqueue(requireContext(), treeUri, encryptKey, codecVersion)) {
+            Toast.makeText(requireContext(), "无法保存凭证，批量加密未开始", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Toast.makeText(requireContext(), "已开始批量加密", Toast.LENGTH_SHORT).show();
+    }
+
+    private void observeBulkWork() {
+        WorkManager.getInstance(requireContext())
+                .getWorkInfosForUniqueWorkLiveData(BulkEncryptWorker.UNIQUE_NAME)
+                .observe(getViewLifecycleOwner(), this::showBulkStatus);
+    }
+
+    private void showBulkStatus(List<WorkInfo> infos) {
+        if (infos == null || infos.isEmpty()) {
+            tvBulkStatus.setVisibility(View.GONE);
+            return;
+        }
+        WorkInfo info = infos.get(0);
+        Data data = info.getState().isFinished() ? info.getOutputData() : info.getProgress();
+        int done = data.getInt(BulkEncryptWorker.PROGRESS_DONE, 0);
+        int failed = data.getInt(BulkEncryptWorker.PROGRESS_FAILED, 0);
+        int total = data.getInt(BulkEncryptWorker.PROGRESS_TOTAL, 0);
+
+        String status;
+        switch (info.getState()) {
+            case RUNNING:
+                long bytes = data.getLong(BulkEncryptWorker.PROGRESS_BYTES, 0);
+                long totalBytes = data.getLong(BulkEncryptWorker.PROGRESS_TOTAL_BYTES, 0);
+                long resumedBytes = data.getLong(BulkEncryptWorker.PROGRESS_RESUMED_BYTES, 0);
+                long elapsed = data.getLong(BulkEncryptWorker.PROGRESS_ELAPSED_MS, 0);
+                long processed = bytes - resumedBytes;
+                status = "批量加密中：" + done + "/" + total + "个文件";
+                if (elapsed > 0 && processed > 0) {
+                    long bytesPerSecond = processed * 1000 / elapsed;
+                    long etaSeconds = (totalBytes - bytes) / Math.max(1, bytesPerSecond);
+                    status += "，" + (bytesPerSecond / 1024) + " KB/s，预计剩余" + etaSeconds + "秒";
+                }
+                break;
+            case SUCCEEDED:
+                status = "批量加密完成：" + done + "个文件" + (failed > 0 ? "，失败" + failed + "个" : "");
+                break;
+            case FAILED:
+                status = "批量加密失败";
+                break;
+            case CANCELLED:
+                status = "批量加密已取消";
+                break;
+            default:
+                status = "批量加密等待中...";
+                break;
+        }
+        tvBulkStatus.setVisibility(View.VISIBLE);
+        tvBulkStatus.setText(status);
+    }
+
+    private void runEncryption(String content, String key) {
+        cancelCurrentJob();
+        currentJob = EncryptionEngine.shared().encrypt(content, key, codecVersion,
+                ContextCompat.getMainExecutor(requireContext()), encryptedContent -> {
+                    currentJob = null;
+                    lastEncryptedContent = encryptedContent;
+                    pendingResult = encryptedContent;
+                    showResultWhenReady();
+                });
+    }
+
+    private void showResultWhenReady() {
+        if (pendingResult != null && !processAnimator.isPlaying()) {
+            showResult(pendingResult);
+            pendingResult = null;
         }
     }
 
+    private void cancelCurrentJob() {
+        if (currentJob != null) {
+            currentJob.cancel();
+            currentJob = null;
+        }
+        pendingResult = null;
+    }
+
+    private void hideProcess() {
+        processAnimator.cancel();
+        tvEncryptProcessTitle.setVisibility(View.GONE);
+        tvEncryptProcess.setVisibility(View.GONE);
+    }
+
     private void showEncryptionAnimation(String content, String key) {
         // 显示加密过程
         tvEncryptProcessTitle.setVisibility(View.VISIBLE);
         tvEncryptProcess.setVisibility(View.VISIBLE);
-        tvEncryptProcess.setText("");
 
         final String[] steps = {
-                "1. 读取文本内容: " + content,
-                "2. 使用SHA-256算法对原文和凭证 '" + key + "' 进行哈希...",
+                "1. 读取文本内容: " + ProcessAnimator.excerpt(content),
+                "2. 使用SHA-256算法对原文和凭证 '" + ProcessAnimator.excerpt(key) + "' 进行哈希...",
                 "3. 将'只因你太美'五个字设定为编码基础...",
                 "4. 字符'只': 11100111 10101001",
                 "5. 字符'因': 10111001 10000101",
@@ -126,34 +394,15 @@ public class EncryptFragment extends Fragment {
                 "12. 加密完成！"
         };
 
-        for (int i = 0; i < steps.length; i++) {
-            final int stepIndex = i;
-            handler.postDelayed(() -> {
-                tvEncryptProcess.append(steps[stepIndex] + "\n");
-                // 最后一步完成后显示结果
-                if (stepIndex == steps.length - 1) {
-                    String encryptedContent = EncryptionUtil.encrypt(content, key);
-                    Log.d(TAG, "动画结束后加密结果: " + encryptedContent);
-                    lastEncryptedContent = encryptedContent;
-                    showResult(encryptedContent);
-                }
-            }, i * 300); // 每步延迟300毫秒
-        }
+        // 每步间隔300毫秒
+        processAnimator.play(steps, 300, this::showResultWhenReady);
     }
 
     private void showResult(String result) {
         tvResultTitle.setVisibility(View.VISIBLE);
-        tvResult.setVisibility(View.VISIBLE);
-        tvResult.setText(result);
+        rvResult.setVisibility(View.VISIBLE);
+        resultViewer.show(result);
         btnCopy.setVisibility(View.VISIBLE);
-        Log.d(TAG, "显示加密结果: " + result);
-    }
-
-    private void copyResultToClipboard() {
-        String result = tvResult.getText().toString();
-        ClipboardManager clipboard = (ClipboardManager) requireContext().getSystemService(Context.CLIPBOARD_SERVICE);
-        ClipData clip = ClipData.newPlainText("加密结果", result);
-        clipboard.setPrimaryClip(clip);
-        Toast.makeText(requireContext(), "已复制到剪贴板", Toast.LENGTH_SHORT).show();
+        btnShare.setVisibility(View.VISIBLE);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,114 @@
+package com.example.kun_said.fragments;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.view.animation.LinearInterpolator;
+import android.widget.TextView;
+
+/**
+ * 加密解密过程的逐行展示
+ * 由一个ValueAnimator按帧驱动，所有步骤预先拼接成一个字符数组，每多出一行只调用一次setText，
+ * 不再为每一步单独post消息，也不反复append。可以随时跳过到最后或取消。
+ */
+final class ProcessAnimator {
+    // 过程中回显原文的最大字符数，完整内容在结果区域显示
+    private static final int EXCERPT_CHARS = 100;
+
+    private final TextView target;
+    private ValueAnimator animator;
+    private char[] text;
+    private int[] lineEnds;
+    private int shownLines;
+    private boolean playing;
+
+    ProcessAnimator(TextView target) {
+        this.target = target;
+    }
+
+    /**
+     * 开始播放，正在播放的动画会被取消
+     * @param steps 每个步骤一行
+     * @param stepMillis 相邻两行出现的间隔
+     * @param onFinished 播放完毕或被跳过后在主线程回调
+     */
+    void play(String[] steps, long stepMillis, Runnable onFinished) {
+        cancel();
+        StringBuilder builder = new StringBuilder();
+        lineEnds = new int[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            builder.append(steps[i]).append('\n');
+            lineEnds[i] = builder.length();
+        }
+        text = new char[builder.length()];
+        builder.getChars(0, builder.length(), text, 0);
+        shownLines = 0;
+        target.setText("");
+        playing = true;
+
+        // 第一行立即出现，最后一行在动画结束时出现
+        ValueAnimator created = ValueAnimator.ofInt(1, steps.length);
+        created.setDuration(stepMillis * (steps.length - 1));
+        created.setInterpolator(new LinearInterpolator());
+        created.addUpdateListener(animation -> showLines((int) animation.getAnimatedValue()));
+        created.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                showLines(lineEnds.length);
+                playing = false;
+                animator = null;
+                onFinished.run();
+            }
+        });
+        animator = created;
+        created.start();
+    }
+
+    /**
+     * 立即显示全部步骤并回调onFinished
+     */
+    void skip() {
+        if (animator != null) {
+            animator.end();
+        }
+    }
+
+    /**
+     * 停止播放，不再回调
+     */
+    void cancel() {
+        ValueAnimator current = animator;
+        animator = null;
+        playing = false;
+        if (current != null) {
+            current.removeAllUpdateListeners();
+            current.removeAllListeners();
+            current.cancel();
+        }
+    }
+
+    boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * 过程中回显的文本，过长时截断并注明总字数，避免长文本拖慢过程区域的布局
+     */
+    static String excerpt(String content) {
+        if (content.length() <= EXCERPT_CHARS) {
+            return content;
+        }
+        int end = EXCERPT_CHARS;
+        if (Character.isHighSurrogate(content.charAt(end - 1))) {
+            end--;
+        }
+        return content.substring(0, end) + "…（共" + content.length() + "字）";
+    }
+
+    private void showLines(int lines) {
+        if (lines > shownLines) {
+            shownLines = lines;
+            target.setText(text, 0, lineEnds[lines - 1]);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.kun_said.fragments;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.kun_said.R;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * 加密解密结果的分页展示
+ * 结果按大约CHUNK_CHARS个字符切成多段，每段是RecyclerView中的一项，只有屏幕附近的段会被布局；
+ * 段落的文字测量通过PrecomputedTextCompat在后台线程完成。一开始只加载前几段作为预览，
+ * 滑动到已加载部分的末尾时再继续切分加载，超长结果不会在主线程上一次性测量和布局。
+ */
+final class ResultViewer {
+    // 每段的字符数上限，尽量在换行处切分
+    private static final int CHUNK_CHARS = 2048;
+    // 每次加载的段数，第一次加载的部分就是预览
+    private static final int PAGE_CHUNKS = 8;
+    // 距离已加载部分末尾还剩几段时加载下一页
+    private static final int PREFETCH_CHUNKS = 2;
+    // 结果超过一段时列表的固定高度，列表在这个高度内滚动
+    private static final int MAX_HEIGHT_DP = 400;
+
+    private static final int TYPE_CHUNK = 0;
+    private static final int TYPE_FOOTER = 1;
+
+    // 所有结果列表共用的测量线程
+    private static final Executor LAYOUT_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kun-text-layout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final RecyclerView list;
+    private final Adapter adapter = new Adapter();
+    private String text = "";
+    // 第i段为[chunkEnds[i-1], chunkEnds[i])，只保存已加载的段
+    private int[] chunkEnds = new int[PAGE_CHUNKS];
+    private int chunkCount;
+    private boolean loadPosted;
+    private final Runnable loadMore = () -> {
+        loadPosted = false;
+        loadPage();
+    };
+
+    ResultViewer(RecyclerView list) {
+        this.list = list;
+        list.setLayoutManager(new LinearLayoutManager(list.getContext()));
+        list.setAdapter(adapter);
+        list.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (layoutManager != null && !loadPosted && hasMore()
+                        && layoutManager.findLastVisibleItemPosition() >= chunkCount - PREFETCH_CHUNKS) {
+                    // 滚动回调中不能修改列表，放到下一帧
+                    loadPosted = true;
+                    recyclerView.post(loadMore);
+                }
+            }
+        });
+    }
+
+    /**
+     * 显示新的结果，替换之前的内容并回到开头
+     */
+    void show(String result) {
+        list.removeCallbacks(loadMore);
+        loadPosted = false;
+        text = result;
+        chunkCount = 0;
+        ViewGroup.LayoutParams params = list.getLayoutParams();
+        params.height = result.length() > CHUNK_CHARS
+                ? Math.round(MAX_HEIGHT_DP * list.getResources().getDisplayMetrics().density)
+                : ViewGroup.LayoutParams.WRAP_CONTENT;
+        list.setLayoutParams(params);
+        appendChunks();
+        adapter.notifyDataSetChanged();
+        list.scrollToPosition(0);
+    }
+
+    /**
+     * @return 当前显示的完整结果
+     */
+    String getText() {
+        return text;
+    }
+
+    private boolean hasMore() {
+        return loadedChars() < text.length();
+    }
+
+    private int loadedChars() {
+        return chunkCount == 0 ? 0 : chunkEnds[chunkCount - 1];
+    }
+
+    /**
+     * 加载下一页，已加载部分之后有页脚提示剩余字数
+     */
+    private void loadPage() {
+        if (!hasMore()) {
+            return;
+        }
+        int first = chunkCount;
+        appendChunks();
+        adapter.notifyItemRangeInserted(first, chunkCount - first);
+        if (hasMore()) {
+            // 页脚后移，剩余字数也变了
+            adapter.notifyItemChanged(chunkCount);
+        } else {
+            adapter.notifyItemRemoved(chunkCount);
+        }
+    }
+
+    private void appendChunks() {
+        int start = loadedChars();
+        for (int i = 0; i < PAGE_CHUNKS && start < text.length(); i++) {
+            int end = chunkEnd(start);
+            if (chunkCount == chunkEnds.length) {
+                chunkEnds = Arrays.copyOf(chunkEnds, chunkCount * 2);
+            }
+            chunkEnds[chunkCount++] = end;
+            start = end;
+        }
+    }
+
+    /**
+     * 从start开始的一段的结束位置，优先在后半段的最后一个换行之后切分，不拆开代理对
+     */
+    private int chunkEnd(int start) {
+        int end = Math.min(text.length(), start + CHUNK_CHARS);
+        if (end == text.length()) {
+            return end;
+        }
+        int newline = text.lastIndexOf('\n', end - 1);
+        if (newline >= start + CHUNK_CHARS / 2) {
+            return newline + 1;
+        }
+        if (Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private final class Adapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        @Override
+        public int getItemCount() {
+            return chunkCount + (hasMore() && chunkCount > 0 ? 1 : 0);
+        }
+
+        @Override
+        public int getItemViewType(int position) {
+            return position < chunkCount ? TYPE_CHUNK : TYPE_FOOTER;
+        }
+
+        @NonNull
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            int layout = viewType == TYPE_CHUNK ? R.layout.item_result_chunk : R.layout.item_result_footer;
+            View view = LayoutInflater.from(parent.getContext()).inflate(layout, parent, false);
+            return new RecyclerView.ViewHolder(view) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+            if (getItemViewType(position) == TYPE_FOOTER) {
+                ((TextView) holder.itemView).setText("继续滑动加载剩余" + (text.length() - loadedChars()) + "字");
+                return;
+            }
+            int start = position == 0 ? 0 : chunkEnds[position - 1];
+            int end = chunkEnds[position];
+            // 段尾的换行由段与段之间的分隔代替
+            if (end > start && text.charAt(end - 1) == '\n') {
+                end--;
+            }
+            AppCompatTextView view = (AppCompatTextView) holder.itemView;
+            // 测量在后台进行，视图真正需要测量时才等待结果；预取会提前调用这里
+            view.setTextFuture(PrecomputedTextCompat.getTextFuture(text.substring(start, end),
+                    TextViewCompat.getTextMetricsParams(view), LAYOUT_EXECUTOR));
+        }
+    }
+}
@@ -1,28 +1,45 @@
 package com.example.kun_said.fragments;
 
 import android.app.AlertDialog;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Button;
 import android.widget.Switch;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
-import androidx.preference.PreferenceManager;
 
 import com.example.kun_said.R;
+import com.example.kun_said.settings.SettingsRepository;
+import com.example.kun_said.util.Metrics;
+import com.example.kun_said.util.Tracer;
+
+import java.io.File;
+import java.io.IOException;
 
 public class SettingsFragment extends Fragment {
+    // 连续点击版本号的次数达到该值后显示诊断信息
+    private static final int DIAGNOSTICS_TAPS = 5;
+    private static final String TRACE_FILE_NAME = "kun_trace.txt";
 
     private Switch switchAnimation;
+    private Switch switchSelfContained;
     private TextView tvPrivacyPolicy;
     private TextView tvTermsOfService;
     private TextView tvKunProtocol;
-    private SharedPreferences sharedPreferences;
+    private TextView tvVersion;
+    private View cvDiagnostics;
+    private TextView tvDiagnostics;
+    private Button btnRefreshDiagnostics;
+    private Button btnExportTrace;
+    private int versionTaps;
+    private SettingsRepository settingsRepository;
+    private final SettingsRepository.Listener settingsListener = this::applySettings;
 
     @Nullable
     @Override
@@ -35,37 +52,78 @@ public class SettingsFragment extends Fragment {
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
-        sharedPreferences = PreferenceManager.getDefaultSharedPreferences(requireContext());
+        settingsRepository = SettingsRepository.get(requireContext());
         setupListeners();
-        loadSettings();
+        settingsRepository.addListener(settingsListener);
+    }
+
+    @Override
+    public void onDestroyView() {
+        settingsRepository.removeListener(settingsListener);
+        super.onDestroyView();
     }
 
     private void initViews(View view) {
         switchAnimation = view.findViewById(R.id.switch_animation);
+        switchSelfContained = view.findViewById(R.id.switch_self_contained);
         tvPrivacyPolicy = view.findViewById(R.id.tv_privacy_policy);
         tvTermsOfService = view.findViewById(R.id.tv_terms_of_service);
         tvKunProtocol = view.findViewById(R.id.tv_kun_protocol);
+        tvVersion = view.findViewById(R.id.tv_version);
+        cvDiagnostics = view.findViewById(R.id.cv_diagnostics);
+        tvDiagnostics = view.findViewById(R.id.tv_diagnostics);
+        btnRefreshDiagnostics = view.findViewById(R.id.btn_refresh_diagnostics);
+        btnExportTrace = view.findViewById(R.id.btn_export_trace);
     }
 
     private void setupListeners() {
         switchAnimation.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            saveAnimationSetting(isChecked);
+            settingsRepository.setAnimationEnabled(isChecked);
+        });
+        switchSelfContained.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            settingsRepository.setSelfContainedCodec(isChecked);
         });
 
         tvPrivacyPolicy.setOnClickListener(v -> showPrivacyPolicy());
         tvTermsOfService.setOnClickListener(v -> showTermsOfService());
         tvKunProtocol.setOnClickListener(v -> showKunProtocol());
+        tvVersion.setOnClickListener(v -> onVersionTapped());
+        btnRefreshDiagnostics.setOnClickListener(v -> refreshDiagnostics());
+        btnExportTrace.setOnClickListener(v -> exportTrace());
+    }
+
+    // 开关与设置相同时setChecked不会触发回调，不会重复写入
+    private void applySettings(SettingsRepository.Settings settings) {
+        switchAnimation.setChecked(settings.animationEnabled);
+        switchSelfContained.setChecked(settings.selfContainedCodec);
+    }
+
+    private void onVersionTapped() {
+        if (++versionTaps >= DIAGNOSTICS_TAPS) {
+            cvDiagnostics.setVisibility(View.VISIBLE);
+            // 打开诊断信息后开始记录追踪
+            Tracer.setEnabled(true);
+            refreshDiagnostics();
+        }
     }
 
-    private void loadSettings() {
-        boolean animationEnabled = sharedPreferences.getBoolean("animation_enabled", true);
-        switchAnimation.setChecked(animationEnabled);
+    private void refreshDiagnostics() {
+        tvDiagnostics.setText(Metrics.snapshot().toString());
     }
 
-    private void saveAnimationSetting(boolean enabled) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putBoolean("animation_enabled", enabled);
-        editor.apply();
+    // 导出到应用专属外部目录，可以直接用adb pull取出
+    private void exportTrace() {
+        File dir = requireContext().getExternalFilesDir(null);
+        if (dir == null) {
+            dir = requireContext().getFilesDir();
+        }
+        File file = new File(dir, TRACE_FILE_NAME);
+        try {
+            Tracer.export(file);
+            Toast.makeText(requireContext(), "追踪已导出到 " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Toast.makeText(requireContext(), "导出失败：" + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
     }
 
     private void showPrivacyPolicy() {
@@ -99,6 +157,9 @@ public class SettingsFragment extends Fragment {
                         "2. 将'只因你太美'五个字转换为固定的二进制分组\n" +
                         "3. 根据二进制分组和哈希值生成最终的加密文本\n" +
                         "4. 最终格式为：'坤曰：只因你太美，你我美积极，加密凭证'\n\n" +
+                        "自包含编码：\n" +
+                        "原文与凭证派生的密钥流异或后，每个字节写成四位'只因你太美'五进制数字，" +
+                        "格式为：'坤曰二：只因你太美，你我美积极，加密文本，加密凭证'，无需映射即可解密\n\n" +
                         "注意：这是一种娱乐性质的加密，安全性有限，请勿用于加密敏感数据。")
                 .setPositiveButton("我已了解", null)
                 .show();
@@ -0,0 +1,205 @@
+package com.example.kun_said.service;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+
+import java.io.Closeable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 跨进程传递的一批文本
+ * 内容较小时直接写入Parcel；超过INLINE_LIMIT_BYTES时写入一块只读共享内存，Parcel中只带文件描述符，
+ * 整批仍然只需要一次Binder事务，也不会超出事务缓冲区的大小限制。
+ * 作为参数传递的批次在调用返回后应调用close()释放共享内存。
+ */
+public final class KunBatch implements Parcelable, Closeable {
+    // Binder事务缓冲区由进程内所有事务共用，总共约1MB，单个事务只使用其中一小部分
+    static final int INLINE_LIMIT_BYTES = 128 * 1024;
+    // 共享内存的大小上限
+    static final int MAX_SHARED_BYTES = 256 * 1024 * 1024;
+
+    private static final int MODE_INLINE = 0;
+    private static final int MODE_SHARED = 1;
+    private static final String REGION_NAME = "kun-batch";
+
+    private final List<String> items;
+    // 第一次以共享内存方式写出时创建
+    private SharedMemory sharedMemory;
+
+    private KunBatch(List<String> items) {
+        this.items = items;
+    }
+
+    /**
+     * @param items 批次内容，不能包含null
+     */
+    public static KunBatch of(List<String> items) {
+        for (String item : items) {
+            if (item == null) {
+                throw new IllegalArgumentException("批次中不能包含null");
+            }
+        }
+        return new KunBatch(Collections.unmodifiableList(new ArrayList<>(items)));
+    }
+
+    public static KunBatch of(String item) {
+        return new KunBatch(Collections.singletonList(item));
+    }
+
+    /**
+     * @return 批次内容，不可修改
+     */
+    public List<String> items() {
+        return items;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    public int describeContents() {
+        return inlineBytes() > INLINE_LIMIT_BYTES ? CONTENTS_FILE_DESCRIPTOR : 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        if (inlineBytes() <= INLINE_LIMIT_BYTES) {
+            dest.writeInt(MODE_INLINE);
+            dest.writeStringList(items);
+            return;
+        }
+        if (sharedMemory == null) {
+            sharedMemory = toSharedMemory(items);
+        }
+        dest.writeInt(MODE_SHARED);
+        dest.writeTypedObject(sharedMemory, 0);
+        if ((flags & PARCELABLE_WRITE_RETURN_VALUE) != 0) {
+            // 作为返回值写出后不再使用，Parcel中已经复制了文件描述符
+            close();
+        }
+    }
+
+    /**
+     * 释放共享内存，可以重复调用
+     */
+    @Override
+    public void close() {
+        if (sharedMemory != null) {
+            sharedMemory.close();
+            sharedMemory = null;
+        }
+    }
+
+    public static final Creator<KunBatch> CREATOR = new Creator<KunBatch>() {
+        @Override
+        public KunBatch createFromParcel(Parcel in) {
+            if (in.readInt() == MODE_INLINE) {
+                List<String> items = new ArrayList<>();
+                in.readStringList(items);
+                return new KunBatch(Collections.unmodifiableList(items));
+            }
+            SharedMemory memory = in.readTypedObject(SharedMemory.CREATOR);
+            if (memory == null) {
+                throw new IllegalArgumentException("批次缺少共享内存");
+            }
+            try {
+                return new KunBatch(fromSharedMemory(memory));
+            } finally {
+                memory.close();
+            }
+        }
+
+        @Override
+        public KunBatch[] newArray(int size) {
+            return new KunBatch[size];
+        }
+    };
+
+    /**
+     * @return 直接写入Parcel时的大约字节数：每条4字节长度加UTF-16内容
+     */
+    private long inlineBytes() {
+        long bytes = 4;
+        for (String item : items) {
+            bytes += 4 + 2L * (item.length() + 1);
+        }
+        return bytes;
+    }
+
+    // 布局：4字节条数，之后每条是4字节长度加UTF-8内容
+    private static SharedMemory toSharedMemory(List<String> items) {
+        byte[][] encoded = new byte[items.size()][];
+        long size = 4;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = items.get(i).getBytes(StandardCharsets.UTF_8);
+            size += 4 + encoded[i].length;
+        }
+        if (size > MAX_SHARED_BYTES) {
+            throw new IllegalArgumentException("批次过大：" + size + "字节");
+        }
+        SharedMemory memory = null;
+        try {
+            memory = SharedMemory.create(REGION_NAME, (int) size);
+            ByteBuffer buffer = memory.mapReadWrite();
+            try {
+                buffer.putInt(encoded.length);
+                for (byte[] item : encoded) {
+                    buffer.putInt(item.length).put(item);
+                }
+            } finally {
+                SharedMemory.unmap(buffer);
+            }
+            // 对方只能读取
+            memory.setProtect(OsConstants.PROT_READ);
+            return memory;
+        } catch (ErrnoException e) {
+            if (memory != null) {
+                memory.close();
+            }
+            throw new IllegalStateException("创建共享内存失败：" + e.getMessage());
+        }
+    }
+
+    private static List<String> fromSharedMemory(SharedMemory memory) {
+        ByteBuffer buffer;
+        try {
+            buffer = memory.mapReadOnly();
+        } catch (ErrnoException e) {
+            throw new IllegalStateException("读取共享内存失败：" + e.getMessage());
+        }
+        try {
+            int count = buffer.getInt();
+            // 共享内存由对方写入，条数和长度都要检查
+            if (count < 0 || count > buffer.remaining() / 4) {
+                throw new IllegalArgumentException("批次条数无效");
+            }
+            List<String> items = new ArrayList<>(count);
+            byte[] scratch = new byte[0];
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IllegalArgumentException("批次内容长度无效");
+                }
+                if (scratch.length < length) {
+                    scratch = new byte[length];
+                }
+                buffer.get(scratch, 0, length);
+                items.add(new String(scratch, 0, length, StandardCharsets.UTF_8));
+            }
+            return Collections.unmodifiableList(items);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("批次内容不完整");
+        } finally {
+            SharedMemory.unmap(buffer);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.kun_said.service;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.IBinder;
+
+import com.example.kun_said.util.EncryptionEngine;
+import com.example.kun_said.util.EncryptionUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 供其他应用绑定的加密解密服务
+ * 调用方需要声明USE_KUN_SERVICE权限，通过action BIND_KUN_SERVICE绑定后获得IKunService。
+ * 单条调用提交给全局的EncryptionEngine，与应用内的请求共用有界队列并合并相同请求；
+ * 批量调用按每段BATCH_CHUNK_ITEMS条交给encryptAll/decryptAll，在多个核心上并行计算，映射存储每段只访问一次；
+ * 批次在服务自己的有界线程池上执行，Binder线程同样最多等待CALL_TIMEOUT_SECONDS，排队已满时直接拒绝。
+ * 超时取消只在段与段之间生效：已经开始的一段在并行流中执行，无法中途停止，会继续占用线程直到这一段完成。
+ * 引擎拒绝或执行失败时抛出IllegalStateException，不会把失败提示当作结果返回。
+ * 结果的大小会先检查，单条结果过大时提示改用批量接口，批量结果由KunBatch自动改用共享内存。
+ */
+public class KunService extends Service {
+    public static final String ACTION_BIND = "com.example.kun_said.action.BIND_KUN_SERVICE";
+
+    // 单条调用等待后台引擎的最长时间，Binder线程不能无限阻塞
+    private static final long CALL_TIMEOUT_SECONDS = 30;
+    private static final int MAX_BATCH_ITEMS = 100_000;
+    // 同时执行的批次数和排队的批次数，超出时拒绝而不是占住更多Binder线程
+    private static final int BATCH_THREADS = 2;
+    private static final int BATCH_QUEUE = 8;
+    // 批量调用每段的条数，段与段之间检查是否已被取消
+    private static final int BATCH_CHUNK_ITEMS = 4096;
+
+    private static final ThreadPoolExecutor batchExecutor = createBatchExecutor();
+
+    private final IBinder binder = new Endpoint();
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    /**
+     * Binder接口实现，不持有Service的引用，客户端持有Binder不会导致Service泄漏
+     */
+    private static final class Endpoint extends IKunService.Stub {
+        @Override
+        public String encrypt(String content, String key, int version) {
+            checkEncrypt(content, key, version);
+            return checkInline(await((engine, callback) ->
+                    engine.encrypt(content, key, version, Runnable::run, callback)));
+        }
+
+        @Override
+        public String decrypt(String content, String key) {
+            if (content == null) {
+                throw new IllegalArgumentException("密文不能为空");
+            }
+            String resolved = key != null ? key : resolveKey(content);
+            return checkInline(await((engine, callback) ->
+                    engine.decrypt(content, resolved, Runnable::run, callback)));
+        }
+
+        @Override
+        public KunBatch encryptBatch(KunBatch contents, KunBatch keys, int version) {
+            checkEncrypt(contents, keys, version);
+            List<String> items = contents.items();
+            List<String> expanded = expandKeys(keys.items(), contents.size());
+            return KunBatch.of(awaitBatch(() -> inChunks(items, expanded,
+                    (chunk, chunkKeys) -> EncryptionUtil.encryptAll(chunk, chunkKeys, version))));
+        }
+
+        @Override
+        public KunBatch decryptBatch(KunBatch contents, KunBatch keys) {
+            checkBatch(contents);
+            List<String> resolved;
+            if (keys != null) {
+                resolved = expandKeys(keys.items(), contents.size());
+            } else {
+                resolved = new ArrayList<>(contents.size());
+                for (String content : contents.items()) {
+                    resolved.add(resolveKey(content));
+                }
+            }
+            List<String> items = contents.items();
+            return KunBatch.of(awaitBatch(() -> inChunks(items, resolved, EncryptionUtil::decryptAll)));
+        }
+    }
+
+    /**
+     * 提交一个引擎任务的方式
+     */
+    private interface Submission {
+        EncryptionEngine.Job submit(EncryptionEngine engine, EncryptionEngine.Callback callback);
+    }
+
+    /**
+     * 对一段内容和凭证执行的批量操作
+     */
+    private interface BatchOperation {
+        List<String> apply(List<String> contents, List<String> keys);
+    }
+
+    /**
+     * 分段执行批量操作，每段开始前检查当前线程是否已被中断
+     */
+    private static List<String> inChunks(List<String> contents, List<String> keys, BatchOperation operation) {
+        int count = contents.size();
+        if (count <= BATCH_CHUNK_ITEMS) {
+            return operation.apply(contents, keys);
+        }
+        List<String> results = new ArrayList<>(count);
+        for (int from = 0; from < count; from += BATCH_CHUNK_ITEMS) {
+            if (Thread.currentThread().isInterrupted()) {
+                // 调用方已超时取消，结果不会再被使用
+                throw new IllegalStateException("处理已取消");
+            }
+            int to = Math.min(count, from + BATCH_CHUNK_ITEMS);
+            results.addAll(operation.apply(contents.subList(from, to), keys.subList(from, to)));
+        }
+        return results;
+    }
+
+    /**
+     * 在后台引擎上执行并在当前Binder线程等待结果
+     * 引擎拒绝或执行失败时抛出异常，调用方不会把失败提示当作密文或原文
+     */
+    private static String await(Submission submission) {
+        String[] result = new String[1];
+        boolean[] failed = new boolean[1];
+        CountDownLatch done = new CountDownLatch(1);
+        EncryptionEngine.Job job = submission.submit(EncryptionEngine.shared(), new EncryptionEngine.Callback() {
+            @Override
+            public void onResult(String value) {
+                result[0] = value;
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(String message) {
+                result[0] = message;
+                failed[0] = true;
+                done.countDown();
+            }
+        });
+        try {
+            if (!done.await(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                job.cancel();
+                throw new IllegalStateException("处理超时");
+            }
+        } catch (InterruptedException e) {
+            job.cancel();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("处理被中断");
+        }
+        if (failed[0]) {
+            throw new IllegalStateException(result[0]);
+        }
+        return result[0];
+    }
+
+    /**
+     * 在批量线程池上执行并在当前Binder线程等待结果，超时或被中断时取消
+     * 取消会中断执行线程，由inChunks在下一段开始前停止
+     */
+    private static List<String> awaitBatch(Callable<List<String>> task) {
+        Future<List<String>> future;
+        try {
+            future = batchExecutor.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("服务繁忙，请稍后重试");
+        }
+        try {
+            return future.get(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IllegalStateException("处理超时");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("处理被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("处理失败：" + cause.getMessage());
+        }
+    }
+
+    private static ThreadPoolExecutor createBatchExecutor() {
+        AtomicInteger index = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(BATCH_THREADS, BATCH_THREADS,
+                30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(BATCH_QUEUE), runnable -> {
+                    Thread thread = new Thread(runnable, "kun-service-batch-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // 服务空闲时不保留线程
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 从密文中提取凭证；格式不正确时返回空凭证，解密时会得到格式错误的提示
+     */
+    private static String resolveKey(String content) {
+        String key = EncryptionUtil.extractKey(content);
+        return key != null ? key : "";
+    }
+
+    private static List<String> expandKeys(List<String> keys, int count) {
+        if (keys.size() == 1 && count != 1) {
+            return Collections.nCopies(count, keys.get(0));
+        }
+        if (keys.size() != count) {
+            throw new IllegalArgumentException("内容与凭证数量不一致");
+        }
+        return keys;
+    }
+
+    private static void checkEncrypt(String content, String key, int version) {
+        if (content == null || key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("原文和凭证不能为空");
+        }
+        checkVersion(version);
+    }
+
+    private static void checkEncrypt(KunBatch contents, KunBatch keys, int version) {
+        checkBatch(contents);
+        if (keys == null || keys.size() == 0) {
+            throw new IllegalArgumentException("凭证不能为空");
+        }
+        for (String key : keys.items()) {
+            if (key.isEmpty()) {
+                throw new IllegalArgumentException("凭证不能为空");
+            }
+        }
+        checkVersion(version);
+    }
+
+    private static void checkBatch(KunBatch contents) {
+        if (contents == null) {
+            throw new IllegalArgumentException("批次不能为空");
+        }
+        if (contents.size() > MAX_BATCH_ITEMS) {
+            throw new IllegalArgumentException("单批最多" + MAX_BATCH_ITEMS + "条");
+        }
+    }
+
+    private static void checkVersion(int version) {
+        if (version != EncryptionUtil.VERSION_MAPPED && version != EncryptionUtil.VERSION_SELF_CONTAINED) {
+            throw new IllegalArgumentException("不支持的版本：" + version);
+        }
+    }
+
+    /**
+     * 单条结果直接写入Binder事务，过大时会导致事务失败，提前给出明确的错误
+     */
+    private static String checkInline(String result) {
+        if (result != null && 2L * result.length() > KunBatch.INLINE_LIMIT_BYTES) {
+            throw new IllegalStateException("结果过大，请使用批量接口");
+        }
+        return result;
+    }
+}
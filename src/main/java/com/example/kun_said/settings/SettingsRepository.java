@@ -0,0 +1,161 @@
+package com.example.kun_said.settings;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.preference.PreferenceManager;
+
+import com.example.kun_said.util.EncryptionUtil;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全局设置
+ * 启动时在后台线程读取一次SharedPreferences，之后各页面只读取内存中的不可变快照，
+ * 修改通过监听器在主线程推送给所有页面。读取和写入磁盘都在同一个后台线程上按顺序进行，
+ * 页面创建时不再有磁盘读写。
+ */
+public final class SettingsRepository {
+    private static final String KEY_ANIMATION_ENABLED = "animation_enabled";
+    private static final String KEY_SELF_CONTAINED_CODEC = "self_contained_codec";
+
+    private static volatile SettingsRepository instance;
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService io = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kun-settings");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    // 仅在io线程上使用
+    private SharedPreferences preferences;
+    private volatile Settings current = Settings.DEFAULTS;
+
+    /**
+     * 设置变化监听器，总是在主线程回调
+     */
+    public interface Listener {
+        void onSettingsChanged(Settings settings);
+    }
+
+    /**
+     * 设置快照，不可变
+     */
+    public static final class Settings {
+        static final Settings DEFAULTS = new Settings(true, false);
+
+        public final boolean animationEnabled;
+        public final boolean selfContainedCodec;
+
+        Settings(boolean animationEnabled, boolean selfContainedCodec) {
+            this.animationEnabled = animationEnabled;
+            this.selfContainedCodec = selfContainedCodec;
+        }
+
+        /**
+         * @return 加密使用的编码版本
+         */
+        public int codecVersion() {
+            return selfContainedCodec ? EncryptionUtil.VERSION_SELF_CONTAINED : EncryptionUtil.VERSION_MAPPED;
+        }
+    }
+
+    /**
+     * @return 全局共享的设置，第一次调用时开始在后台读取
+     */
+    public static SettingsRepository get(Context context) {
+        SettingsRepository repository = instance;
+        if (repository == null) {
+            synchronized (SettingsRepository.class) {
+                repository = instance;
+                if (repository == null) {
+                    repository = new SettingsRepository(context.getApplicationContext());
+                    instance = repository;
+                }
+            }
+        }
+        return repository;
+    }
+
+    private SettingsRepository(Context context) {
+        this.context = context;
+        io.execute(this::load);
+    }
+
+    /**
+     * @return 当前设置，尚未读取完成时为默认值
+     */
+    public Settings current() {
+        return current;
+    }
+
+    /**
+     * 等待启动时的读取完成，用于测试
+     * @return 在超时之前完成时返回true
+     */
+    public boolean awaitLoaded(long timeout, TimeUnit unit) throws InterruptedException {
+        return loaded.await(timeout, unit);
+    }
+
+    /**
+     * 注册监听器并立即回调一次当前设置，需在主线程调用
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+        listener.onSettingsChanged(current);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void setAnimationEnabled(boolean enabled) {
+        io.execute(() -> {
+            if (current.animationEnabled != enabled) {
+                update(new Settings(enabled, current.selfContainedCodec), KEY_ANIMATION_ENABLED, enabled);
+            }
+        });
+    }
+
+    public void setSelfContainedCodec(boolean enabled) {
+        io.execute(() -> {
+            if (current.selfContainedCodec != enabled) {
+                update(new Settings(current.animationEnabled, enabled), KEY_SELF_CONTAINED_CODEC, enabled);
+            }
+        });
+    }
+
+    private void load() {
+        preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        current = new Settings(
+                preferences.getBoolean(KEY_ANIMATION_ENABLED, Settings.DEFAULTS.animationEnabled),
+                preferences.getBoolean(KEY_SELF_CONTAINED_CODEC, Settings.DEFAULTS.selfContainedCodec));
+        loaded.countDown();
+        notifyListeners();
+    }
+
+    // 在io线程上调用，排在启动读取之后，不会被读取结果覆盖
+    private void update(Settings settings, String key, boolean value) {
+        current = settings;
+        preferences.edit().putBoolean(key, value).apply();
+        notifyListeners();
+    }
+
+    private void notifyListeners() {
+        mainHandler.post(() -> {
+            Settings settings = current;
+            for (Listener listener : listeners) {
+                listener.onSettingsChanged(settings);
+            }
+        });
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.kun_said.share;
+
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.core.content.ContextCompat;
+import androidx.core.content.FileProvider;
+import androidx.fragment.app.Fragment;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 复制和分享加密解密结果
+ * 较短的结果直接以文本放入剪贴板或分享；较长的结果整段放进ClipData或Intent会超出Binder事务大小，
+ * 改为在后台写入缓存目录下的文件，通过FileProvider的content://地址复制和分享。
+ * 缓存文件只保留最近几个，超过一天的在启动时清理。
+ */
+public final class ResultShare {
+    private static final String TAG = "ResultShare";
+
+    // 不超过这个字符数的结果直接以文本传递，UTF-16下约64KB，远低于Binder事务上限
+    static final int INLINE_LIMIT_CHARS = 32 * 1024;
+    private static final String DIRECTORY = "shared";
+    private static final String MIME_TYPE = "text/plain";
+    private static final int MAX_FILES = 5;
+    private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    // 分块写出，不必为整个结果生成一份字节数组
+    private static final int WRITE_CHUNK_CHARS = 64 * 1024;
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kun-share");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ResultShare() {
+    }
+
+    /**
+     * 复制结果到剪贴板，长结果写入文件后复制文件地址；页面关闭后仍会完成
+     * @param label 剪贴板标签，如"加密结果"
+     */
+    public static void copyToClipboard(Fragment fragment, String label, String result) {
+        Context context = fragment.requireContext().getApplicationContext();
+        if (result.length() <= INLINE_LIMIT_CHARS) {
+            setClip(context, ClipData.newPlainText(label, result));
+            return;
+        }
+        Toast.makeText(context, "结果较长，正在准备...", Toast.LENGTH_SHORT).show();
+        export(context, label, result, uri ->
+                setClip(context, ClipData.newUri(context.getContentResolver(), label, uri)));
+    }
+
+    /**
+     * 通过系统分享面板分享结果，长结果以文件分享；页面关闭后不再弹出分享面板
+     * @param label 分享标题，如"加密结果"
+     */
+    public static void share(Fragment fragment, String label, String result) {
+        Context context = fragment.requireContext().getApplicationContext();
+        if (result.length() <= INLINE_LIMIT_CHARS) {
+            Intent intent = new Intent(Intent.ACTION_SEND)
+                    .setType(MIME_TYPE)
+                    .putExtra(Intent.EXTRA_TEXT, result);
+            fragment.startActivity(Intent.createChooser(intent, label));
+            return;
+        }
+        Toast.makeText(context, "结果较长，正在准备...", Toast.LENGTH_SHORT).show();
+        export(context, label, result, uri -> {
+            if (!fragment.isAdded()) {
+                return;
+            }
+            Intent intent = new Intent(Intent.ACTION_SEND)
+                    .setType(MIME_TYPE)
+                    .putExtra(Intent.EXTRA_STREAM, uri)
+                    .putExtra(Intent.EXTRA_TITLE, label)
+                    .addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            // 放入ClipData，读取权限才会传递给选择器之后的目标应用
+            intent.setClipData(ClipData.newRawUri(label, uri));
+            fragment.startActivity(Intent.createChooser(intent, label));
+        });
+    }
+
+    /**
+     * 删除过期的缓存文件，在后台线程调用
+     */
+    public static void cleanUp(Context context) {
+        File[] files = directory(context).listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (now - file.lastModified() > MAX_AGE_MILLIS && !file.delete()) {
+                Log.w(TAG, "删除缓存文件失败: " + file.getName());
+            }
+        }
+    }
+
+    private interface Exported {
+        void onExported(Uri uri);
+    }
+
+    private static void export(Context context, String label, String result, Exported callback) {
+        Executor mainExecutor = ContextCompat.getMainExecutor(context);
+        WRITER.execute(() -> {
+            Uri uri;
+            try {
+                File file = write(context, label, result);
+                uri = FileProvider.getUriForFile(context, authority(context), file);
+            } catch (IOException | IllegalArgumentException e) {
+                Log.e(TAG, "导出结果失败", e);
+                mainExecutor.execute(() ->
+                        Toast.makeText(context, "导出结果失败", Toast.LENGTH_SHORT).show());
+                return;
+            }
+            mainExecutor.execute(() -> callback.onExported(uri));
+        });
+    }
+
+    // 在WRITER线程上调用
+    private static File write(Context context, String label, String result) throws IOException {
+        File directory = directory(context);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建目录: " + directory);
+        }
+        trim(directory);
+        // 文件名会显示在接收方，使用标签加时间
+        File file = new File(directory, label + "-" + System.currentTimeMillis() + ".txt");
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            for (int start = 0; start < result.length(); start += WRITE_CHUNK_CHARS) {
+                writer.write(result, start, Math.min(WRITE_CHUNK_CHARS, result.length() - start));
+            }
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * 只保留最近的MAX_FILES - 1个文件，给新文件留出位置
+     */
+    private static void trim(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null || files.length < MAX_FILES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        for (int i = MAX_FILES - 1; i < files.length; i++) {
+            if (!files[i].delete()) {
+                Log.w(TAG, "删除缓存文件失败: " + files[i].getName());
+            }
+        }
+    }
+
+    private static void setClip(Context context, ClipData clip) {
+        ClipboardManager clipboard = (ClipboardManager) context.getSystemService(Context.CLIPBOARD_SERVICE);
+        clipboard.setPrimaryClip(clip);
+        Toast.makeText(context, "已复制到剪贴板", Toast.LENGTH_SHORT).show();
+    }
+
+    private static File directory(Context context) {
+        return new File(context.getCacheDir(), DIRECTORY);
+    }
+
+    private static String authority(Context context) {
+        return context.getPackageName() + ".fileprovider";
+    }
+}
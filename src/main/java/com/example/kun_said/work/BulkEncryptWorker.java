@@ -0,0 +1,368 @@
+package com.example.kun_said.work;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.documentfile.provider.DocumentFile;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.Operation;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.kun_said.util.EncryptionUtil;
+import com.example.kun_said.util.PlaintextSource;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 批量加密文件夹的后台任务
+ * 遍历用户选择的目录树，用有限数量的线程并行加密其中的文本文件，结果写入目录下的"坤曰输出"文件夹。
+ * 每完成一个文件就记录到检查点文件中，进程被杀后重新执行时会跳过已完成的文件。
+ * 输入数据中只有凭证的引用，凭证本身由CredentialVault加密保存，任务成功或失败后删除。
+ */
+public class BulkEncryptWorker extends Worker {
+    private static final String TAG = "BulkEncryptWorker";
+
+    public static final String UNIQUE_NAME = "bulk_encrypt";
+
+    public static final String KEY_TREE_URI = "tree_uri";
+    public static final String KEY_CREDENTIAL_REF = "credential_ref";
+    public static final String KEY_VERSION = "version";
+
+    public static final String PROGRESS_DONE = "done";
+    public static final String PROGRESS_FAILED = "failed";
+    public static final String PROGRESS_TOTAL = "total";
+    public static final String PROGRESS_BYTES = "bytes";
+    public static final String PROGRESS_TOTAL_BYTES = "total_bytes";
+    // 之前的执行中已完成的字节数，计算吞吐量时需要扣除
+    public static final String PROGRESS_RESUMED_BYTES = "resumed_bytes";
+    public static final String PROGRESS_ELAPSED_MS = "elapsed_ms";
+
+    private static final String OUTPUT_DIR_NAME = "坤曰输出";
+    private static final String OUTPUT_SUFFIX = ".kun.txt";
+    // 不超过1MB的文件整段读入并写入持久化映射，更大的文件流式加密并按引用保存
+    private static final long INLINE_LIMIT = 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 500;
+    private static final int MAX_THREADS = 4;
+
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicLong lastReport = new AtomicLong();
+    private int total;
+    private long totalBytes;
+    private long resumedBytes;
+    private long startTime;
+
+    private static final class Item {
+        final DocumentFile file;
+        final String path;
+        final long length;
+
+        Item(DocumentFile file, String path, long length) {
+            this.file = file;
+            this.path = path;
+            this.length = length;
+        }
+    }
+
+    public BulkEncryptWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * 提交批量加密任务，已有任务在执行时不会重复提交
+     * @param treeUri 通过OpenDocumentTree选择的目录
+     * @param key 加密凭证，不写入WorkManager的数据库
+     * @param version 编码版本
+     * @return 凭证无法保存时返回false，任务没有提交
+     */
+    public static boolean enqueue(Context context, Uri treeUri, String key, int version) {
+        Context application = context.getApplicationContext();
+        String reference;
+        try {
+            reference = CredentialVault.store(application, key);
+        } catch (GeneralSecurityException | IOException e) {
+            Log.e(TAG, "保存凭证失败", e);
+            return false;
+        }
+        Data input = new Data.Builder()
+                .putString(KEY_TREE_URI, treeUri.toString())
+                .putString(KEY_CREDENTIAL_REF, reference)
+                .putInt(KEY_VERSION, version)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(BulkEncryptWorker.class)
+                .setInputData(input)
+                .build();
+        WorkManager workManager = WorkManager.getInstance(application);
+        Operation operation = workManager.enqueueUniqueWork(UNIQUE_NAME, ExistingWorkPolicy.KEEP, request);
+        // 已有任务时新请求被忽略，不会执行，它的凭证在这里删除
+        operation.getResult().addListener(() -> {
+            ListenableFuture<WorkInfo> info = workManager.getWorkInfoById(request.getId());
+            info.addListener(() -> {
+                try {
+                    if (info.get() == null) {
+                        CredentialVault.delete(application, reference);
+                    }
+                } catch (ExecutionException | InterruptedException e) {
+                    Log.w(TAG, "查询任务状态失败", e);
+                }
+            }, Runnable::run);
+        }, Runnable::run);
+        return true;
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        String reference = getInputData().getString(KEY_CREDENTIAL_REF);
+        Result result = run(reference != null ? CredentialVault.load(context, reference) : null);
+        // 重试时还需要凭证，成功或失败后不再需要
+        if (reference != null && !result.equals(Result.retry())) {
+            CredentialVault.delete(context, reference);
+        }
+        return result;
+    }
+
+    private Result run(String key) {
+        String treeUri = getInputData().getString(KEY_TREE_URI);
+        int version = getInputData().getInt(KEY_VERSION, EncryptionUtil.VERSION_MAPPED);
+        if (treeUri == null || key == null) {
+            return Result.failure();
+        }
+
+        Context context = getApplicationContext();
+        EncryptionUtil.init(context.getFilesDir());
+        DocumentFile root = DocumentFile.fromTreeUri(context, Uri.parse(treeUri));
+        if (root == null || !root.isDirectory()) {
+            return Result.failure();
+        }
+        DocumentFile outputDir = root.findFile(OUTPUT_DIR_NAME);
+        if (outputDir == null) {
+            outputDir = root.createDirectory(OUTPUT_DIR_NAME);
+        }
+        if (outputDir == null) {
+            return Result.failure();
+        }
+
+        List<Item> items = new ArrayList<>();
+        collect(root, "", outputDir, items);
+        File checkpoint = checkpointFile(treeUri, key, version);
+        Set<String> completed = loadCheckpoint(checkpoint);
+        total = items.size();
+        for (Item item : items) {
+            totalBytes += item.length;
+            if (completed.contains(item.path)) {
+                done.incrementAndGet();
+                resumedBytes += item.length;
+            }
+        }
+        bytesDone.set(resumedBytes);
+        startTime = System.currentTimeMillis();
+        reportProgress(true);
+
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        // 最多同时排队threads * 2个文件，避免一次性为所有文件创建任务
+        Semaphore permits = new Semaphore(threads * 2);
+        DocumentFile target = outputDir;
+        try (Writer log = new OutputStreamWriter(new FileOutputStream(checkpoint, true), StandardCharsets.UTF_8)) {
+            for (Item item : items) {
+                if (isStopped()) {
+                    break;
+                }
+                if (completed.contains(item.path)) {
+                    continue;
+                }
+                permits.acquire();
+                pool.execute(() -> {
+                    try {
+                        process(item, target, key, version);
+                        synchronized (log) {
+                            log.write(item.path);
+                            log.write('\n');
+                            log.flush();
+                        }
+                        done.incrementAndGet();
+                    } catch (IOException | RuntimeException e) {
+                        Log.w(TAG, "加密文件失败: " + item.path, e);
+                        failed.incrementAndGet();
+                    } finally {
+                        bytesDone.addAndGet(item.length);
+                        permits.release();
+                        reportProgress(false);
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            Log.e(TAG, "写入检查点失败", e);
+            pool.shutdownNow();
+            return Result.retry();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pool.shutdownNow();
+            return Result.retry();
+        }
+
+        if (isStopped()) {
+            // 检查点保留，下次执行时从中断处继续
+            return Result.retry();
+        }
+        reportProgress(true);
+        if (!checkpoint.delete()) {
+            Log.w(TAG, "无法删除检查点: " + checkpoint);
+        }
+        return Result.success(progressData());
+    }
+
+    private void process(Item item, DocumentFile outputDir, String key, int version) throws IOException {
+        Context context = getApplicationContext();
+        DocumentSource source = new DocumentSource(context, item.file.getUri());
+
+        String encrypted;
+        if (version == EncryptionUtil.VERSION_MAPPED && item.length > INLINE_LIMIT) {
+            try (Reader reader = source.open()) {
+                encrypted = EncryptionUtil.encrypt(reader, key, source.id(), source);
+            }
+        } else {
+            encrypted = EncryptionUtil.encrypt(readAll(source), key, version);
+        }
+
+        String name = outputName(item.path);
+        DocumentFile output = outputDir.findFile(name);
+        if (output == null) {
+            output = outputDir.createFile("text/plain", name);
+        }
+        if (output == null) {
+            throw new IOException("无法创建输出文件: " + name);
+        }
+        try (OutputStream out = context.getContentResolver().openOutputStream(output.getUri(), "wt")) {
+            if (out == null) {
+                throw new FileNotFoundException(output.getUri().toString());
+            }
+            out.write(encrypted.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 由源文件在目录树中的相对路径得到输出文件名
+     * 先把'%'转义为"%25"，再把'/'转义为"%2F"，不同的路径一定得到不同的名字，
+     * 例如"a/b.txt"和"a_b.txt"不会写入同一个输出文件
+     */
+    static String outputName(String path) {
+        return path.replace("%", "%25").replace("/", "%2F") + OUTPUT_SUFFIX;
+    }
+
+    private static String readAll(PlaintextSource source) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[8192];
+        try (Reader reader = source.open()) {
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, count);
+            }
+        }
+        return builder.toString();
+    }
+
+    // 递归收集目录树中的文本文件，跳过输出目录本身
+    private static void collect(DocumentFile dir, String prefix, DocumentFile outputDir, List<Item> items) {
+        for (DocumentFile file : dir.listFiles()) {
+            String name = file.getName();
+            if (name == null) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                if (!file.getUri().equals(outputDir.getUri())) {
+                    collect(file, prefix + name + "/", outputDir, items);
+                }
+            } else if (file.getType() != null && file.getType().startsWith("text/")) {
+                items.add(new Item(file, prefix + name, file.length()));
+            }
+        }
+    }
+
+    private File checkpointFile(String treeUri, String key, int version) {
+        File dir = new File(getApplicationContext().getFilesDir(), "bulk");
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "无法创建检查点目录: " + dir);
+        }
+        String id = Integer.toHexString((treeUri + '\n' + key + '\n' + version).hashCode());
+        return new File(dir, id + ".checkpoint");
+    }
+
+    private static Set<String> loadCheckpoint(File checkpoint) {
+        Set<String> completed = new HashSet<>();
+        if (!checkpoint.exists()) {
+            return completed;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(checkpoint), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    completed.add(line);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "读取检查点失败", e);
+        }
+        return completed;
+    }
+
+    // 进度最多每500毫秒上报一次
+    private void reportProgress(boolean force) {
+        long now = System.currentTimeMillis();
+        long last = lastReport.get();
+        if (!force && (now - last < PROGRESS_INTERVAL_MS || !lastReport.compareAndSet(last, now))) {
+            return;
+        }
+        lastReport.set(now);
+        setProgressAsync(progressData());
+    }
+
+    private Data progressData() {
+        return new Data.Builder()
+                .putInt(PROGRESS_DONE, done.get())
+                .putInt(PROGRESS_FAILED, failed.get())
+                .putInt(PROGRESS_TOTAL, total)
+                .putLong(PROGRESS_BYTES, bytesDone.get())
+                .putLong(PROGRESS_TOTAL_BYTES, totalBytes)
+                .putLong(PROGRESS_RESUMED_BYTES, resumedBytes)
+                .putLong(PROGRESS_ELAPSED_MS, System.currentTimeMillis() - startTime)
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.kun_said.work;
+
+import android.content.Context;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.UUID;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * 后台任务使用的凭证保管
+ * WorkManager的输入数据会明文写入它的数据库，所以输入中只放引用，凭证本身用AndroidKeyStore中
+ * 不可导出的AES密钥加密后保存在应用私有且不参与备份的目录，任务结束后删除。
+ */
+final class CredentialVault {
+    private static final String TAG = "CredentialVault";
+
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String KEY_ALIAS = "kun_work_credential";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String DIR_NAME = "work_credentials";
+    private static final int TAG_BITS = 128;
+
+    private CredentialVault() {
+    }
+
+    /**
+     * 加密保存一个凭证
+     * @return 引用，用于之后读取和删除
+     */
+    static String store(Context context, String credential) throws GeneralSecurityException, IOException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey());
+        byte[] iv = cipher.getIV();
+        byte[] sealed = cipher.doFinal(credential.getBytes(StandardCharsets.UTF_8));
+
+        String reference = UUID.randomUUID().toString();
+        File dir = directory(context);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("无法创建目录: " + dir);
+        }
+        try (FileOutputStream out = new FileOutputStream(new File(dir, reference))) {
+            out.write(ByteBuffer.allocate(1 + iv.length + sealed.length)
+                    .put((byte) iv.length).put(iv).put(sealed).array());
+        }
+        return reference;
+    }
+
+    /**
+     * @return 引用对应的凭证，不存在或无法解密时返回null
+     */
+    static String load(Context context, String reference) {
+        File file = file(context, reference);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        try {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            byte[] iv = new byte[data.get() & 0xFF];
+            data.get(iv);
+            byte[] sealed = new byte[data.remaining()];
+            data.get(sealed);
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, secretKey(), new GCMParameterSpec(TAG_BITS, iv));
+            return new String(cipher.doFinal(sealed), StandardCharsets.UTF_8);
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            Log.w(TAG, "读取凭证失败", e);
+            return null;
+        }
+    }
+
+    static void delete(Context context, String reference) {
+        File file = file(context, reference);
+        if (file != null && file.exists() && !file.delete()) {
+            Log.w(TAG, "无法删除凭证: " + file);
+        }
+    }
+
+    private static File directory(Context context) {
+        return new File(context.getNoBackupFilesDir(), DIR_NAME);
+    }
+
+    // 引用来自WorkManager的输入数据，只接受store()生成的格式，不能借此访问其他文件
+    private static File file(Context context, String reference) {
+        try {
+            return new File(directory(context), UUID.fromString(reference).toString());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static synchronized SecretKey secretKey() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        keyStore.load(null);
+        KeyStore.Entry entry = keyStore.getEntry(KEY_ALIAS, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            return ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+        }
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.kun_said.work;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+
+import com.example.kun_said.util.PlaintextSource;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 存储访问框架中的文本文件作为原文来源
+ * 以URI字符串作为来源标识写入持久化映射，重启后由resolver()返回的解析器重新打开，
+ * 需要事先保留该URI的读取权限。
+ */
+public final class DocumentSource implements PlaintextSource {
+    private final ContentResolver resolver;
+    private final Uri uri;
+
+    public DocumentSource(Context context, Uri uri) {
+        this.resolver = context.getApplicationContext().getContentResolver();
+        this.uri = uri;
+    }
+
+    /**
+     * @return 来源标识，即文件的URI
+     */
+    public String id() {
+        return uri.toString();
+    }
+
+    @Override
+    public Reader open() throws IOException {
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) {
+            throw new FileNotFoundException(uri.toString());
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return 把content://标识还原为来源的解析器，其他标识返回null
+     */
+    public static PlaintextSource.Resolver resolver(Context context) {
+        Context application = context.getApplicationContext();
+        return sourceId -> sourceId.startsWith(ContentResolver.SCHEME_CONTENT + ":")
+                ? new DocumentSource(application, Uri.parse(sourceId)) : null;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.kun_said
+
+import android.os.Looper
+import androidx.test.core.app.ApplicationProvider
+import com.example.kun_said.settings.SettingsRepository
+import com.example.kun_said.util.EncryptionUtil
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.Config
+import java.util.concurrent.TimeUnit
+
+/**
+ * 启动预热和设置读取的本地测试，在JVM上通过Robolectric运行
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(application = KunApplication::class)
+class StartupTest {
+    @Test
+    fun firstEncryptAfterWarmUp_completesPromptly() {
+        ApplicationProvider.getApplicationContext<KunApplication>()
+        assertTrue("预热未完成", KunApplication.awaitWarmUp(10, TimeUnit.SECONDS))
+        // 预热确实执行过：SHA-256已解析、编码和解析路径都已走过一遍
+        val coldNanos = EncryptionUtil.warmUpNanos()
+        assertTrue("预热没有执行", coldNanos > 0)
+
+        val start = System.nanoTime()
+        val encrypted = EncryptionUtil.encrypt("只因你太美", "凭证")
+        val elapsedNanos = System.nanoTime() - start
+
+        assertTrue(encrypted.startsWith("坤曰："))
+        assertEquals("只因你太美", EncryptionUtil.decrypt(encrypted, "凭证"))
+        // 以同一次运行中预热的耗时作为冷启动基准，预热后的首次加密必须明显更快
+        val message = "首次加密耗时${elapsedNanos / 1_000}us，预热耗时${coldNanos / 1_000}us"
+        assertTrue(message, elapsedNanos * COLD_TO_WARM_RATIO < coldNanos)
+        assertTrue(message, TimeUnit.NANOSECONDS.toMillis(elapsedNanos) < FIRST_ENCRYPT_BUDGET_MILLIS)
+    }
+
+    @Test
+    fun settingsChanges_reachListenersOnMainThread() {
+        val repository = SettingsRepository.get(ApplicationProvider.getApplicationContext())
+        assertTrue(repository.awaitLoaded(10, TimeUnit.SECONDS))
+
+        var received: SettingsRepository.Settings? = null
+        val listener = SettingsRepository.Listener { received = it }
+        repository.addListener(listener)
+        assertSame(repository.current(), received)
+
+        val expected = !repository.current().animationEnabled
+        repository.setAnimationEnabled(expected)
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (received?.animationEnabled != expected && System.nanoTime() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle()
+            Thread.sleep(10)
+        }
+        repository.removeListener(listener)
+
+        assertEquals(expected, received?.animationEnabled)
+        assertEquals(expected, repository.current().animationEnabled)
+    }
+
+    private companion object {
+        // JVM上预热耗时约35ms，之后的首次加密约1.5ms；这里只要求快一半，给机器的波动留出余量
+        const val COLD_TO_WARM_RATIO = 2
+        // 绝对时间只作兜底，具体的延迟以benchmark模块的结果为准
+        const val FIRST_ENCRYPT_BUDGET_MILLIS = 2_000L
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.kun_said.work
+
+import org.junit.Assert.*
+import org.junit.Test
+
+/**
+ * 批量加密输出文件名的测试：不同的源路径不能写入同一个输出文件
+ */
+class BulkOutputNameTest {
+    @Test
+    fun nestedPathAndFlatName_getDifferentOutputs() {
+        assertNotEquals(BulkEncryptWorker.outputName("a/b.txt"), BulkEncryptWorker.outputName("a_b.txt"))
+    }
+
+    @Test
+    fun escapedLookingNames_getDifferentOutputs() {
+        val paths = listOf("a/b.txt", "a_b.txt", "a%2Fb.txt", "a%252Fb.txt", "a%/b.txt", "a/%b.txt", "a%2F/b.txt")
+        val names = paths.map(BulkEncryptWorker::outputName)
+        assertEquals(paths.size, names.toSet().size)
+        names.forEach { assertFalse(it, it.contains('/')) }
+    }
+}